@@ -0,0 +1,364 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stores a large population of seeded games in off-heap memory instead of one {@link State} object per game, so that
+ * the heap and the garbage collector do not grow with the population.
+ *
+ * Every game occupies a fixed {@link #STRIDE} bytes of a direct buffer: its counters, the state of its random number
+ * generator, its tops and its field. A game is addressed by its handle, the int returned by {@link #create(long)},
+ * and the arena offers the operations of State on it. Games play exactly as a {@code State(seed, distribution)} would,
+ * move for move. Games are always on the standard {@link State#COLS} by {@link State#ROWS} board.
+ *
+ * Players decide on a State, so {@link #copyTo(int, State)} loads a game into a reusable scratch State. Different
+ * games may be played on different threads at the same time; a single game must not be.
+ *
+ * Usage: java BoardArena [games] [turns] compares the heap and GC time of the same population in State objects and
+ * in an arena.
+ */
+public class BoardArena {
+
+	// Int offsets within a game
+	private static final int TURN = 0;
+	private static final int CLEARED = 1;
+	private static final int NEXT_PIECE = 2;
+	private static final int LOST = 3;
+	private static final int RANDOM = 4; // long, two ints
+	private static final int TOP = 6;
+	private static final int FIELD = TOP + State.COLS;
+
+	// Bytes per game, rounded up to a cache line
+	public static final int STRIDE = ((FIELD + State.ROWS * State.COLS) * 4 + 63) & ~63;
+
+	// Games per direct buffer, which can hold at most 2 GB
+	private static final int SEGMENT_GAMES = Integer.MAX_VALUE / STRIDE;
+
+	// Constants of java.util.Random, whose sequence the arena reproduces
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	private final ByteBuffer[] segments;
+	private final int capacity;
+	private final double[] pieceDistribution;
+	private int size;
+
+	/**
+	 * @param pieceDistribution - relative likelihood of each piece for every game, or null for the uniform game
+	 */
+	public BoardArena(int capacity, double[] pieceDistribution) {
+		if (pieceDistribution != null && pieceDistribution.length != State.N_PIECES) {
+			throw new IllegalArgumentException("piece distribution needs " + State.N_PIECES + " weights");
+		}
+		this.capacity = capacity;
+		this.pieceDistribution = pieceDistribution;
+
+		segments = new ByteBuffer[(capacity + SEGMENT_GAMES - 1) / SEGMENT_GAMES];
+		for (int i = 0; i < segments.length; i++) {
+			int games = Math.min(SEGMENT_GAMES, capacity - i * SEGMENT_GAMES);
+			segments[i] = ByteBuffer.allocateDirect(games * STRIDE).order(ByteOrder.nativeOrder());
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a new game and returns its handle.
+	 */
+	public int create(long seed) {
+		if (size == capacity) {
+			throw new IllegalStateException("arena is full: " + capacity + " games");
+		}
+		reset(size, seed);
+		return size++;
+	}
+
+	/**
+	 * Starts game {@code game} over as a new game seeded with {@code seed}.
+	 */
+	public void reset(int game, long seed) {
+		ByteBuffer b = segment(game);
+		int base = base(game);
+		for (int i = 0; i < STRIDE; i += 8) {
+			b.putLong(base + i, 0);
+		}
+		b.putLong(base + RANDOM * 4, (seed ^ MULTIPLIER) & MASK);
+		b.putInt(base + NEXT_PIECE * 4, randomPiece(b, base));
+	}
+
+	private ByteBuffer segment(int game) {
+		return segments[game / SEGMENT_GAMES];
+	}
+
+	private static int base(int game) {
+		return (game % SEGMENT_GAMES) * STRIDE;
+	}
+
+	private static int cell(int base, int row, int column) {
+		return base + (FIELD + row * State.COLS + column) * 4;
+	}
+
+	/********************************* State operations *********************************/
+
+	public int getNextPiece(int game) {
+		return segment(game).getInt(base(game) + NEXT_PIECE * 4);
+	}
+
+	public boolean hasLost(int game) {
+		return segment(game).getInt(base(game) + LOST * 4) != 0;
+	}
+
+	public int getRowsCleared(int game) {
+		return segment(game).getInt(base(game) + CLEARED * 4);
+	}
+
+	public int getTurnNumber(int game) {
+		return segment(game).getInt(base(game) + TURN * 4);
+	}
+
+	public int getTop(int game, int column) {
+		return segment(game).getInt(base(game) + (TOP + column) * 4);
+	}
+
+	// Turn the cell was filled on, 0 if it is empty
+	public int getCell(int game, int row, int column) {
+		return segment(game).getInt(cell(base(game), row, column));
+	}
+
+	public int[][] legalMoves(int game) {
+		return State.legalMoves[getNextPiece(game)];
+	}
+
+	public boolean makeMove(int game, int move) {
+		int[] m = legalMoves(game)[move];
+		return makeMove(game, m[State.ORIENT], m[State.SLOT]);
+	}
+
+	/**
+	 * Same as {@link State#makeMove(int, int)}.
+	 */
+	public boolean makeMove(int game, int orient, int slot) {
+		ByteBuffer b = segment(game);
+		int base = base(game);
+		int piece = b.getInt(base + NEXT_PIECE * 4);
+		int turn = b.getInt(base + TURN * 4) + 1;
+		b.putInt(base + TURN * 4, turn);
+
+		int[] bottom = State.getpBottom()[piece][orient];
+		int[] pieceTop = State.getpTop()[piece][orient];
+		int width = State.getpWidth()[piece][orient];
+		int pieceHeight = State.getpHeight()[piece][orient];
+
+		int height = b.getInt(base + (TOP + slot) * 4) - bottom[0];
+		for (int c = 1; c < width; c++) {
+			height = Math.max(height, b.getInt(base + (TOP + slot + c) * 4) - bottom[c]);
+		}
+
+		if (height + pieceHeight >= State.ROWS) {
+			b.putInt(base + LOST * 4, 1);
+			return false;
+		}
+
+		for (int i = 0; i < width; i++) {
+			for (int h = height + bottom[i]; h < height + pieceTop[i]; h++) {
+				b.putInt(cell(base, h, i + slot), turn);
+			}
+			b.putInt(base + (TOP + slot + i) * 4, height + pieceTop[i]);
+		}
+
+		int cleared = b.getInt(base + CLEARED * 4);
+		for (int r = height + pieceHeight - 1; r >= height; r--) {
+			boolean full = true;
+			for (int c = 0; c < State.COLS; c++) {
+				if (b.getInt(cell(base, r, c)) == 0) {
+					full = false;
+					break;
+				}
+			}
+
+			if (full) {
+				cleared++;
+				for (int c = 0; c < State.COLS; c++) {
+					int top = b.getInt(base + (TOP + c) * 4);
+					for (int i = r; i < top; i++) {
+						b.putInt(cell(base, i, c), b.getInt(cell(base, i + 1, c)));
+					}
+					top--;
+					while (top >= 1 && b.getInt(cell(base, top - 1, c)) == 0) {
+						top--;
+					}
+					b.putInt(base + (TOP + c) * 4, top);
+				}
+			}
+		}
+		b.putInt(base + CLEARED * 4, cleared);
+
+		b.putInt(base + NEXT_PIECE * 4, randomPiece(b, base));
+		return true;
+	}
+
+	// Same draw as State.randomPiece() with a seeded java.util.Random
+	private int randomPiece(ByteBuffer b, int base) {
+		long seed = b.getLong(base + RANDOM * 4);
+		seed = (seed * MULTIPLIER + ADDEND) & MASK;
+		long high = seed >>> (48 - 26);
+		seed = (seed * MULTIPLIER + ADDEND) & MASK;
+		long low = seed >>> (48 - 27);
+		b.putLong(base + RANDOM * 4, seed);
+		double r = ((high << 27) + low) * 0x1.0p-53;
+
+		if (pieceDistribution == null) {
+			return (int) (r * State.N_PIECES);
+		}
+
+		double total = 0;
+		for (int i = 0; i < State.N_PIECES; i++) {
+			total += pieceDistribution[i];
+		}
+		double cumulative = 0;
+		r *= total;
+		for (int i = 0; i < State.N_PIECES - 1; i++) {
+			cumulative += pieceDistribution[i];
+			if (r < cumulative) {
+				return i;
+			}
+		}
+		return State.N_PIECES - 1;
+	}
+
+	/**
+	 * Loads the board, counters and next piece of game {@code game} into {@code s}, typically a scratch State reused
+	 * for every decision. The random number generator stays in the arena.
+	 */
+	public void copyTo(int game, State s) {
+		ByteBuffer b = segment(game);
+		int base = base(game);
+		int[][] field = s.getField();
+		for (int r = 0; r < State.ROWS; r++) {
+			for (int c = 0; c < State.COLS; c++) {
+				field[r][c] = b.getInt(cell(base, r, c));
+			}
+		}
+		int[] top = s.getTop();
+		for (int c = 0; c < State.COLS; c++) {
+			top[c] = b.getInt(base + (TOP + c) * 4);
+		}
+		s.restore(b.getInt(base + TURN * 4), b.getInt(base + CLEARED * 4), b.getInt(base + LOST * 4) != 0,
+				b.getInt(base + NEXT_PIECE * 4));
+	}
+
+	/**
+	 * Plays every game one move at a time, round robin, until each is lost or has played {@code turnCap} turns.
+	 * Games are split between {@code threads} threads, each deciding on its own scratch State.
+	 */
+	public void playAll(final PlayerSkeleton p, final int turnCap, int threads) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> parts = new ArrayList<Future<?>>();
+		final int chunk = (size + threads - 1) / threads;
+		for (int t = 0; t < threads; t++) {
+			final int first = t * chunk;
+			final int last = Math.min(size, first + chunk);
+			parts.add(pool.submit(new Runnable() {
+				public void run() {
+					State scratch = new State();
+					boolean playing = true;
+					while (playing) {
+						playing = false;
+						for (int game = first; game < last; game++) {
+							if (hasLost(game) || getTurnNumber(game) >= turnCap) {
+								continue;
+							}
+							copyTo(game, scratch);
+							makeMove(game, p.pickMove(scratch, legalMoves(game)));
+							playing = true;
+						}
+					}
+				}
+			}));
+		}
+		try {
+			for (Future<?> part : parts) {
+				part.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/********************************* Comparison *********************************/
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	private static long heapUsed() {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int turns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		float[] weights = ParameterStore.readWeights(PlayerSkeleton.PARAM_FILE_NAME);
+		PlayerSkeleton p = weights == null ? new PlayerSkeleton() : new PlayerSkeleton(weights);
+
+		// One State per game, played round robin like the arena
+		long heap = heapUsed();
+		long gc = gcMillis();
+		long start = System.currentTimeMillis();
+		State[] states = new State[games];
+		for (int i = 0; i < games; i++) {
+			states[i] = new State(i);
+		}
+		long stateHeap = Math.max(0, heapUsed() - heap);
+		for (int turn = 0; turn < turns; turn++) {
+			for (State s : states) {
+				if (!s.hasLost()) {
+					s.makeMove(p.pickMove(s, s.legalMoves()));
+				}
+			}
+		}
+		long stateRows = 0;
+		for (State s : states) {
+			stateRows += s.getRowsCleared();
+		}
+		System.out.println("State objects: " + (System.currentTimeMillis() - start) + " ms, GC " + (gcMillis() - gc)
+				+ " ms, heap " + stateHeap / 1024 + " KB, rows " + stateRows);
+		states = null;
+
+		heap = heapUsed();
+		gc = gcMillis();
+		start = System.currentTimeMillis();
+		BoardArena arena = new BoardArena(games, null);
+		for (int i = 0; i < games; i++) {
+			arena.create(i);
+		}
+		long arenaHeap = Math.max(0, heapUsed() - heap);
+		arena.playAll(p, turns, 1);
+		long arenaRows = 0;
+		for (int i = 0; i < games; i++) {
+			arenaRows += arena.getRowsCleared(i);
+		}
+		System.out.println("Arena:         " + (System.currentTimeMillis() - start) + " ms, GC " + (gcMillis() - gc)
+				+ " ms, heap " + arenaHeap / 1024 + " KB, rows " + arenaRows + ", off-heap "
+				+ (long) games * STRIDE / 1024 + " KB");
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Measures how the cost of a move grows with the size of the board: making a move and picking one with the default
+ * player, on mid-game boards of each size (see {@link PlayerBenchmark#midGameBoards(int, long, int, int)}).
+ *
+ * The standard 21x10 board should cost the same here as in {@link PlayerBenchmark}; other sizes share the same code
+ * but build their own table of legal moves.
+ *
+ * Usage: java BoardSizeBenchmark [warmup seconds] [measure seconds] [RxC ...], e.g. 21x10 for 21 rows of 10 columns
+ */
+public class BoardSizeBenchmark {
+
+	private static final int CORPUS_SIZE = 32;
+	private static final long CORPUS_SEED = 42;
+
+	// {rows, cols}, from a quick proxy board to one far larger than the standard game
+	public static final int[][] DEFAULT_SIZES = {{12, 6}, {State.ROWS, State.COLS}, {40, 20}, {64, 32}};
+
+	public static void main(String[] args) {
+		long warmupMillis = args.length > 0 ? (long) (Double.parseDouble(args[0]) * 1000) : 1000;
+		long measureMillis = args.length > 1 ? (long) (Double.parseDouble(args[1]) * 1000) : 2000;
+		int[][] sizes = DEFAULT_SIZES;
+		if (args.length > 2) {
+			sizes = new int[args.length - 2][];
+			for (int i = 2; i < args.length; i++) {
+				String[] size = args[i].split("x");
+				sizes[i - 2] = new int[] {Integer.parseInt(size[0]), Integer.parseInt(size[1])};
+			}
+		}
+
+		System.out.println(String.format("%-8s %6s %14s %14s %14s %12s", "Board", "moves", "makeMove ns",
+				"pickMove ns", "pick ns/move", "ns/cell"));
+		for (int[] size : sizes) {
+			int rows = size[0], cols = size[1];
+			// Fewer boards for large sizes, whose games take far longer to reach mid-game
+			double area = (double) rows * cols / (State.ROWS * State.COLS);
+			int count = Math.max(4, (int) (CORPUS_SIZE / Math.max(area, 1)));
+			final State[] boards = PlayerBenchmark.midGameBoards(count, CORPUS_SEED, rows, cols);
+			final int n = boards.length;
+			final PlayerSkeleton p = new PlayerSkeleton();
+
+			double[] make = PlayerBenchmark.measure(new PlayerBenchmark.Operation("makeMove") {
+				long run(int i) {
+					State s = new State(boards[i % n]);
+					int[][] moves = s.legalMoves();
+					s.makeMove(moves[i % moves.length]);
+					return s.getRowsCleared();
+				}
+			}, warmupMillis, measureMillis);
+			double[] pick = PlayerBenchmark.measure(new PlayerBenchmark.Operation("pickMove") {
+				long run(int i) {
+					State s = boards[i % n];
+					return p.pickMove(s, s.legalMoves());
+				}
+			}, warmupMillis, measureMillis);
+
+			double moves = 0;
+			for (State s : boards) {
+				moves += s.legalMoves().length;
+			}
+			moves /= n;
+			double makeNanos = 1e9 / make[0], pickNanos = 1e9 / pick[0];
+			System.out.println(String.format("%-8s %6.1f %14.1f %14.1f %14.1f %12.2f", rows + "x" + cols, moves,
+					makeNanos, pickNanos, pickNanos / moves, makeNanos / (rows * cols)));
+		}
+	}
+}
@@ -0,0 +1,196 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded table of the terms that depend only on the top contour of a board: bumpiness, total and maximum height, and
+ * the height at which every piece would land in every orientation and slot.
+ *
+ * Boards that differ below their surface share a contour, and contours only differ by a constant when the whole stack
+ * has moved up or down, so entries are keyed by the contour relative to its lowest column and hold relative heights.
+ * Add {@link #base(int[])} of the board to get absolute ones.
+ *
+ * The table is direct-mapped: a contour has exactly one slot, and a new contour simply replaces the one it collides
+ * with. Entries are immutable and only ever replaced whole, so threads share a cache without locking; a thread that
+ * reads a stale slot at worst recomputes an entry.
+ */
+public class ContourCache {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final int cols;
+	private final Entry[] table;
+	private final int mask;
+
+	// First index of each orientation's slots in a piece's landing heights, [piece][orient], and their number
+	private final int[][] offsets;
+	private final int[] moves;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public ContourCache() {
+		this(State.COLS, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param cols     - width of the boards looked up
+	 * @param capacity - number of contours kept, rounded up to a power of two
+	 */
+	public ContourCache(int cols, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.cols = cols;
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		this.table = new Entry[size];
+		this.mask = size - 1;
+
+		offsets = new int[State.N_PIECES][];
+		moves = new int[State.N_PIECES];
+		for (int piece = 0; piece < State.N_PIECES; piece++) {
+			offsets[piece] = new int[State.getpOrients()[piece]];
+			for (int orient = 0; orient < offsets[piece].length; orient++) {
+				offsets[piece][orient] = moves[piece];
+				moves[piece] += cols + 1 - State.getpWidth()[piece][orient];
+			}
+		}
+	}
+
+	/**
+	 * Terms of one contour, with every height relative to the lowest column.
+	 */
+	public static final class Entry {
+		private final int[] contour;
+		private final ContourCache cache;
+
+		public final int bumpiness;
+		public final int totalHeight;
+		public final int maxHeight;
+
+		// Filled in per piece on first use: many contours are only ever looked up for the terms above, or one piece
+		private final Heights[] landing = new Heights[State.N_PIECES];
+
+		private Entry(int[] contour, ContourCache cache, int bumpiness, int totalHeight, int maxHeight) {
+			this.contour = contour;
+			this.cache = cache;
+			this.bumpiness = bumpiness;
+			this.totalHeight = totalHeight;
+			this.maxHeight = maxHeight;
+		}
+
+		/**
+		 * Row the bottom of {@code piece} rests on when dropped in {@code orient} at {@code slot}, as computed at the
+		 * start of State.makeMove().
+		 */
+		public int landingHeight(int piece, int orient, int slot) {
+			Heights heights = landing[piece];
+			if (heights == null) {
+				// Threads racing here compute equal heights, so either may win
+				heights = new Heights(cache.landingHeights(contour, piece));
+				landing[piece] = heights;
+			}
+			return heights.heights[cache.offsets[piece][orient] + slot];
+		}
+	}
+
+	// Final field, so that other threads never see the array before it is filled in
+	private static final class Heights {
+		final int[] heights;
+
+		Heights(int[] heights) {
+			this.heights = heights;
+		}
+	}
+
+	// Height of the lowest column, which entry heights are relative to
+	public static int base(int[] top) {
+		int base = top[0];
+		for (int c = 1; c < top.length; c++) {
+			base = Math.min(base, top[c]);
+		}
+		return base;
+	}
+
+	/**
+	 * Returns the entry of the contour {@code top}, computing it if it is not in the table.
+	 */
+	public Entry get(int[] top) {
+		if (top.length != cols) {
+			throw new IllegalArgumentException("cache is for " + cols + " columns, not " + top.length);
+		}
+		int base = base(top);
+		long hash = 0;
+		for (int c = 0; c < cols; c++) {
+			hash = hash * 31 + top[c] - base;
+		}
+		int slot = (int) mix(hash) & mask;
+
+		Entry entry = table[slot];
+		if (entry != null && matches(entry.contour, top, base)) {
+			hits.increment();
+			return entry;
+		}
+		misses.increment();
+		entry = compute(top, base);
+		table[slot] = entry;
+		return entry;
+	}
+
+	private static boolean matches(int[] contour, int[] top, int base) {
+		for (int c = 0; c < contour.length; c++) {
+			if (contour[c] != top[c] - base) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Entry compute(int[] top, int base) {
+		int[] contour = new int[cols];
+		int bumpiness = 0, totalHeight = 0, maxHeight = 0;
+		for (int c = 0; c < cols; c++) {
+			contour[c] = top[c] - base;
+			totalHeight += contour[c];
+			maxHeight = Math.max(maxHeight, contour[c]);
+			if (c > 0) {
+				bumpiness += Math.abs(contour[c] - contour[c - 1]);
+			}
+		}
+		return new Entry(contour, this, bumpiness, totalHeight, maxHeight);
+	}
+
+	private int[] landingHeights(int[] contour, int piece) {
+		int[][] bottoms = State.getpBottom()[piece];
+		int[] widths = State.getpWidth()[piece];
+		int[] landing = new int[moves[piece]];
+		for (int orient = 0; orient < bottoms.length; orient++) {
+			int[] bottom = bottoms[orient];
+			int width = widths[orient];
+			for (int slot = 0; slot + width <= cols; slot++) {
+				int height = contour[slot] - bottom[0];
+				for (int c = 1; c < width; c++) {
+					height = Math.max(height, contour[slot + c] - bottom[c]);
+				}
+				landing[offsets[piece][orient] + slot] = height;
+			}
+		}
+		return landing;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public int getCapacity() {
+		return table.length;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
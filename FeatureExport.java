@@ -0,0 +1,295 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Exports the feature vector of every legal candidate of every decision, plus which candidate was chosen, to a
+ * columnar binary file written and read through memory-mapped I/O.
+ *
+ * One row is one candidate move. Rows are stored in fixed-size blocks, and within a block every column is a contiguous
+ * fixed-width array, so a scan over one feature reads one {@link FloatBuffer} per block without any parsing.
+ *
+ * File layout, little endian:
+ * header (64 bytes): magic, version, number of features, rows per block
+ * each block:        rows used (int, padded to 16 bytes),
+ *                    decision (int[rows per block]),
+ *                    one float[rows per block] per feature, indexed like PlayerSkeleton's multiplierWeights,
+ *                    move index in legalMoves (unsigned byte[rows per block], read with & 0xFF),
+ *                    flags (byte[rows per block]): {@link #CHOSEN}, {@link #GAME_OVER}
+ * Candidates that end the game have no features; their feature columns hold NaN.
+ *
+ * Usage: java FeatureExport file [games] [turn cap]
+ */
+public class FeatureExport {
+
+	static final int MAGIC = 0x54464558; // "TFEX"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 64;
+	static final int BLOCK_HEADER_BYTES = 16;
+	public static final int DEFAULT_BLOCK_ROWS = 1 << 16;
+
+	// Most candidates a decision may have, so that every move index fits in an unsigned byte
+	public static final int MAX_CANDIDATES = 256;
+
+	// Flag bits
+	public static final int CHOSEN = 1;
+	public static final int GAME_OVER = 2;
+
+	static long blockBytes(int features, int blockRows) {
+		return BLOCK_HEADER_BYTES + (long) blockRows * (4 + 4 * features + 1 + 1);
+	}
+
+	/********************************* Writer *********************************/
+
+	public static class Writer implements Closeable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final int features;
+		private final int blockRows;
+		private final long blockBytes;
+
+		private MappedByteBuffer block;
+		private long blockOffset;
+		private int row;
+		private int decisions;
+
+		public Writer(String fileName, int features, int blockRows) throws IOException {
+			this.file = new RandomAccessFile(fileName, "rw");
+			this.file.setLength(0);
+			this.channel = file.getChannel();
+			this.features = features;
+			this.blockRows = blockRows;
+			this.blockBytes = blockBytes(features, blockRows);
+
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(features).putInt(blockRows);
+			blockOffset = HEADER_BYTES - blockBytes;
+		}
+
+		/**
+		 * Writes one decision: row i holds candidate i, with {@code candidates[i]} its features or null if the move
+		 * ends the game.
+		 *
+		 * @throws IllegalArgumentException if there are more than {@link #MAX_CANDIDATES} candidates
+		 */
+		public void writeDecision(float[][] candidates, int chosen) throws IOException {
+			if (candidates.length > MAX_CANDIDATES) {
+				throw new IllegalArgumentException(candidates.length + " candidates, at most " + MAX_CANDIDATES
+						+ " fit the move column");
+			}
+			for (int i = 0; i < candidates.length; i++) {
+				if (block == null || row == blockRows) {
+					nextBlock();
+				}
+
+				block.putInt(BLOCK_HEADER_BYTES + row * 4, decisions);
+				int column = BLOCK_HEADER_BYTES + blockRows * 4;
+				for (int f = 0; f < features; f++) {
+					float value = candidates[i] == null ? Float.NaN : candidates[i][f];
+					block.putFloat(column + row * 4, value);
+					column += blockRows * 4;
+				}
+				block.put(column + row, (byte) i);
+				column += blockRows;
+				block.put(column + row, (byte) ((i == chosen ? CHOSEN : 0) | (candidates[i] == null ? GAME_OVER : 0)));
+
+				row++;
+				block.putInt(0, row);
+			}
+			decisions++;
+		}
+
+		private void nextBlock() throws IOException {
+			blockOffset += blockBytes;
+			block = channel.map(FileChannel.MapMode.READ_WRITE, blockOffset, blockBytes);
+			block.order(ByteOrder.LITTLE_ENDIAN);
+			row = 0;
+		}
+
+		public int getDecisions() {
+			return decisions;
+		}
+
+		public void close() throws IOException {
+			if (block != null) {
+				block.force();
+			}
+			channel.close();
+			file.close();
+		}
+	}
+
+	/********************************* Reader *********************************/
+
+	public static class Reader implements Closeable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final int features;
+		private final int blockRows;
+		private final long blockBytes;
+		private final int blocks;
+
+		public Reader(String fileName) throws IOException {
+			this.file = new RandomAccessFile(fileName, "r");
+			this.channel = file.getChannel();
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC) {
+				throw new IOException("not a feature export");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException("unsupported feature export version " + version);
+			}
+			this.features = header.getInt();
+			this.blockRows = header.getInt();
+			this.blockBytes = blockBytes(features, blockRows);
+			this.blocks = (int) ((channel.size() - HEADER_BYTES) / blockBytes);
+		}
+
+		public int getFeatures() {
+			return features;
+		}
+
+		public int getBlockCount() {
+			return blocks;
+		}
+
+		/**
+		 * Maps block {@code b}. Column views of the returned buffer are obtained with the static methods below.
+		 */
+		public ByteBuffer block(int b) throws IOException {
+			ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + b * blockBytes, blockBytes);
+			return block.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		// Number of rows in use in a mapped block
+		public int rows(ByteBuffer block) {
+			return block.getInt(0);
+		}
+
+		public IntBuffer decisions(ByteBuffer block) {
+			return slice(block, BLOCK_HEADER_BYTES, blockRows * 4).asIntBuffer();
+		}
+
+		public FloatBuffer feature(ByteBuffer block, int f) {
+			return slice(block, BLOCK_HEADER_BYTES + blockRows * 4 * (1 + f), blockRows * 4).asFloatBuffer();
+		}
+
+		// Move indices are unsigned: read them with get(r) & 0xFF
+		public ByteBuffer moves(ByteBuffer block) {
+			return slice(block, BLOCK_HEADER_BYTES + blockRows * 4 * (1 + features), blockRows);
+		}
+
+		public ByteBuffer flags(ByteBuffer block) {
+			return slice(block, BLOCK_HEADER_BYTES + blockRows * 4 * (1 + features) + blockRows, blockRows);
+		}
+
+		private static ByteBuffer slice(ByteBuffer block, int offset, int length) {
+			ByteBuffer view = block.duplicate();
+			view.position(offset).limit(offset + length);
+			return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		public void close() throws IOException {
+			channel.close();
+			file.close();
+		}
+	}
+
+	/********************************* Export *********************************/
+
+	/**
+	 * Plays seeded games with {@code weights} and writes every decision to {@code writer}.
+	 */
+	public static void export(Writer writer, float[] weights, long[] seeds, int turnCap) throws IOException {
+		PlayerSkeleton p = new PlayerSkeleton(weights);
+		for (long seed : seeds) {
+			State s = new State(seed);
+			while (!s.hasLost() && s.getTurnNumber() < turnCap) {
+				int[][] legalMoves = s.legalMoves();
+				float[][] candidates = new float[legalMoves.length][];
+				for (int i = 0; i < legalMoves.length; i++) {
+					float[] features = new float[PlayerSkeleton.NUM_PARAMETERS];
+					if (p.simulateMoveFeatures(s, legalMoves[i], features)) {
+						candidates[i] = features;
+					}
+				}
+
+				// The move pickMove would choose, picked from the features already simulated
+				int move = 0;
+				float max = p.getValue(candidates[0]);
+				for (int i = 1; i < candidates.length; i++) {
+					if (p.getValue(candidates[i]) > max) {
+						move = i;
+						max = p.getValue(candidates[i]);
+					}
+				}
+				writer.writeDecision(candidates, move);
+				s.makeMove(move);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String fileName = args[0];
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int turnCap = args.length > 2 ? Integer.parseInt(args[2]) : GameEvaluator.NO_CAP;
+
+		float[] weights = ParameterStore.readWeights(PlayerSkeleton.PARAM_FILE_NAME);
+		if (weights == null) {
+			weights = PlayerSkeleton.getMultiplierWeights();
+		}
+
+		Writer writer = new Writer(fileName, PlayerSkeleton.NUM_PARAMETERS, DEFAULT_BLOCK_ROWS);
+		try {
+			export(writer, weights, GameEvaluator.seeds(0, games), turnCap);
+		} finally {
+			writer.close();
+		}
+
+		// Scan the file back: mean of each feature over the chosen moves
+		Reader reader = new Reader(fileName);
+		long start = System.nanoTime();
+		double[] sums = new double[reader.getFeatures()];
+		long rows = 0;
+		long chosen = 0;
+		try {
+			for (int b = 0; b < reader.getBlockCount(); b++) {
+				ByteBuffer block = reader.block(b);
+				int used = reader.rows(block);
+				ByteBuffer flags = reader.flags(block);
+				for (int f = 0; f < sums.length; f++) {
+					FloatBuffer column = reader.feature(block, f);
+					for (int r = 0; r < used; r++) {
+						if ((flags.get(r) & CHOSEN) != 0 && (flags.get(r) & GAME_OVER) == 0) {
+							sums[f] += column.get(r);
+						}
+					}
+				}
+				for (int r = 0; r < used; r++) {
+					if ((flags.get(r) & CHOSEN) != 0 && (flags.get(r) & GAME_OVER) == 0) {
+						chosen++;
+					}
+				}
+				rows += used;
+			}
+		} finally {
+			reader.close();
+		}
+
+		System.out.println("Exported " + writer.getDecisions() + " decisions, " + rows + " candidates; scanned in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		for (int f = 0; f < sums.length; f++) {
+			System.out.println("  mean chosen feature " + f + ": " + sums[f] / Math.max(1, chosen));
+		}
+	}
+}
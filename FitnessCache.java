@@ -0,0 +1,289 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk store of finished games, keyed by (weights, evaluation config, seed).
+ *
+ * Looking up a weight vector on a seed set returns the statistics of every game already played and only plays the
+ * missing seeds, so asking for more seeds tightens an existing estimate instead of starting over.
+ *
+ * The file is an append-only log of fixed-width records. It is read into an open-addressing hash table when opened,
+ * which keeps lookups to a few array reads even with millions of stored games. Several processes can share one file:
+ * appends happen under an exclusive file lock, and records appended by others are read in before every lookup.
+ * A record cut short by a crash is never counted, because only whole records are read and each carries a checksum.
+ */
+public class FitnessCache implements Closeable {
+
+	public static final String CACHE_FILE_NAME = "fitness.cache";
+
+	// vector key, seed, encoded game, checksum
+	private static final int RECORD_BYTES = 8 + 8 + 8 + 4;
+	private static final int INITIAL_CAPACITY = 1 << 12;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final float resolution;
+
+	// Read position in the log, always at a record boundary
+	private long position;
+
+	// Hash table of games. A slot is in use when its value is non-zero.
+	private long[] vectorKeys = new long[INITIAL_CAPACITY];
+	private long[] seeds = new long[INITIAL_CAPACITY];
+	private long[] values = new long[INITIAL_CAPACITY];
+	private int size;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public FitnessCache(String fileName) throws IOException {
+		this(fileName, 0);
+	}
+
+	/**
+	 * @param resolution - weights are rounded to multiples of this before they are used as a key, so that vectors
+	 *                   closer than this share their games. 0 keys on the exact weights.
+	 */
+	public FitnessCache(String fileName, float resolution) throws IOException {
+		this.file = new RandomAccessFile(fileName, "rw");
+		this.channel = file.getChannel();
+		this.resolution = resolution;
+
+		refreshShared();
+	}
+
+	/**
+	 * Returns the statistics of {@code weights} on {@code seeds}, playing only the games that are not stored yet.
+	 */
+	public GameEvaluator.Result evaluate(GameEvaluator evaluator, float[] weights, long[] seeds) throws IOException {
+		long key = key(weights, evaluator);
+		GameEvaluator.Result result = new GameEvaluator.Result();
+		PlayerSkeleton p = null;
+
+		refreshShared();
+		for (long seed : seeds) {
+			long value = get(key, seed);
+			if (value != 0) {
+				hits.incrementAndGet();
+				PlayerMetrics.get().cacheHit();
+			} else {
+				misses.incrementAndGet();
+				PlayerMetrics.get().cacheMiss();
+				if (p == null) {
+					p = new PlayerSkeleton(weights);
+				}
+				State s = evaluator.play(p, seed);
+				value = encode(s.getRowsCleared(), s.getTurnNumber(), s.hasLost());
+				put(key, seed, value);
+			}
+			result.add(decodeRows(value), decodeTurns(value), decodeLost(value));
+		}
+		return result;
+	}
+
+	/**
+	 * Number of games answered from the store and played because they were missing.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	// Number of stored games
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+
+	/**
+	 * Key of a weight vector under an evaluation config: the turn cap, the piece distribution, the board size and the
+	 * scenario with its board definition are part of the key, since the same weights score differently under them.
+	 */
+	public long key(float[] weights, GameEvaluator evaluator) {
+		long hash = mix(evaluator.getTurnCap());
+		for (float weight : weights) {
+			float rounded = resolution == 0 ? weight : Math.round(weight / resolution) * resolution;
+			hash = mix(hash ^ Float.floatToIntBits(rounded + 0.0f));
+		}
+
+		double[] distribution = evaluator.getPieceDistribution();
+		if (distribution != null) {
+			for (double d : distribution) {
+				hash = mix(hash ^ Double.doubleToLongBits(d));
+			}
+		}
+
+		// Left out for the standard board, so keys from before board sizes were configurable stay valid
+		if (!evaluator.isStandardBoard()) {
+			hash = mix(hash ^ ((long) evaluator.getRows() << 32 | evaluator.getCols()));
+		}
+		// The distribution of a scenario is the evaluator's, hashed above
+		Scenario scenario = evaluator.getScenario();
+		if (scenario != null) {
+			hash = mix(hash ^ scenario.getName().hashCode());
+			hash = mix(hash ^ scenario.getBoardDefinition().hashCode());
+		}
+		return hash;
+	}
+
+	/********************************* Log file *********************************/
+
+	// Reads in the records other processes have appended
+	private synchronized void refreshShared() throws IOException {
+		FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+		try {
+			refresh();
+		} finally {
+			lock.release();
+		}
+	}
+
+	private synchronized void put(long key, long seed, long value) throws IOException {
+		FileLock lock = channel.lock();
+		try {
+			// Another process may have played the same game in the meantime
+			refresh();
+			if (get(key, seed) != 0) {
+				return;
+			}
+
+			ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+			record.putLong(key).putLong(seed).putLong(value).putInt(checksum(key, seed, value));
+			record.flip();
+
+			long end = position;
+			while (record.hasRemaining()) {
+				end += channel.write(record, end);
+			}
+			position = end;
+			insert(key, seed, value);
+		} finally {
+			lock.release();
+		}
+	}
+
+	// Reads every whole record appended since the last refresh
+	private void refresh() throws IOException {
+		long length = channel.size();
+		if (length - position < RECORD_BYTES) {
+			return;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length - position, RECORD_BYTES * 4096L));
+		while (length - position >= RECORD_BYTES) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), (length - position) / RECORD_BYTES * RECORD_BYTES));
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					break;
+				}
+			}
+			buffer.flip();
+
+			while (buffer.remaining() >= RECORD_BYTES) {
+				long key = buffer.getLong();
+				long seed = buffer.getLong();
+				long value = buffer.getLong();
+				int checksum = buffer.getInt();
+				if (checksum == checksum(key, seed, value) && value != 0) {
+					insert(key, seed, value);
+				}
+				position += RECORD_BYTES;
+			}
+		}
+	}
+
+	private static int checksum(long key, long seed, long value) {
+		long hash = mix(mix(key ^ 0x5bd1e995L) ^ seed) ^ value;
+		return (int) (mix(hash) >>> 32);
+	}
+
+	/********************************* Hash table *********************************/
+
+	private synchronized long get(long key, long seed) {
+		int mask = values.length - 1;
+		for (int i = slot(key, seed, mask); values[i] != 0; i = (i + 1) & mask) {
+			if (vectorKeys[i] == key && seeds[i] == seed) {
+				return values[i];
+			}
+		}
+		return 0;
+	}
+
+	private void insert(long key, long seed, long value) {
+		if ((size + 1) * 2 > values.length) {
+			grow();
+		}
+
+		int mask = values.length - 1;
+		int i = slot(key, seed, mask);
+		while (values[i] != 0) {
+			if (vectorKeys[i] == key && seeds[i] == seed) {
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		vectorKeys[i] = key;
+		seeds[i] = seed;
+		values[i] = value;
+		size++;
+	}
+
+	private void grow() {
+		long[] oldKeys = vectorKeys;
+		long[] oldSeeds = seeds;
+		long[] oldValues = values;
+
+		vectorKeys = new long[oldValues.length * 2];
+		seeds = new long[oldValues.length * 2];
+		values = new long[oldValues.length * 2];
+		size = 0;
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != 0) {
+				insert(oldKeys[i], oldSeeds[i], oldValues[i]);
+			}
+		}
+	}
+
+	private static int slot(long key, long seed, int mask) {
+		return (int) mix(key ^ mix(seed)) & mask;
+	}
+
+	// Finalizer of the SplitMix64 generator, spreads every input bit over the whole output
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/********************************* Game encoding *********************************/
+
+	// rows in the high half, turns in bits 1-31 and whether the game was lost in bit 0. Never 0, since turns >= 1.
+	private static long encode(int rows, int turns, boolean lost) {
+		return ((long) rows << 32) | ((long) turns << 1) | (lost ? 1 : 0);
+	}
+
+	private static int decodeRows(long value) {
+		return (int) (value >>> 32);
+	}
+
+	private static int decodeTurns(long value) {
+		return (int) (value & 0xffffffffL) >>> 1;
+	}
+
+	private static boolean decodeLost(long value) {
+		return (value & 1) != 0;
+	}
+}
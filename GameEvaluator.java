@@ -0,0 +1,340 @@
+/**
+ * Plays seeded games with a set of weights and summarises how well they did.
+ *
+ * Good weights can survive for millions of turns, so games can be stopped at a turn cap. A game that reaches the cap
+ * is treated as censored: it is assumed to keep clearing lines at the rate seen so far, and to end with the per-turn
+ * chance of losing measured over all games. Under that (memoryless) survival model the expected number of lines cleared
+ * per game is simply the total lines cleared divided by the number of games that were lost, which reduces to the
+ * ordinary mean when no game hits the cap.
+ */
+public class GameEvaluator {
+
+	// Turn cap that never stops a game early
+	public static final int NO_CAP = Integer.MAX_VALUE;
+
+	// Piece distribution that floods the board with S and Z pieces so that games end sooner. Ids follow State.
+	public static final double[] HARD_DISTRIBUTION = {1, 1, 1, 1, 1, 2.5, 2.5};
+
+	private final int turnCap;
+	private final double[] pieceDistribution;
+	private final int rows;
+	private final int cols;
+	private final Scenario scenario;
+
+	public GameEvaluator() {
+		this(NO_CAP, null);
+	}
+
+	/**
+	 * @param turnCap - number of turns after which a game is stopped and extrapolated
+	 * @param pieceDistribution - relative likelihood of each piece, or null for the standard uniform game
+	 */
+	public GameEvaluator(int turnCap, double[] pieceDistribution) {
+		this(turnCap, pieceDistribution, State.ROWS, State.COLS);
+	}
+
+	/**
+	 * Plays games on a board of {@code rows} by {@code cols} instead of the standard size, e.g. a small board as a
+	 * quick proxy for the standard one, or a large one to see how the player scales.
+	 */
+	public GameEvaluator(int turnCap, double[] pieceDistribution, int rows, int cols) {
+		if (turnCap <= 0) {
+			throw new IllegalArgumentException("turn cap must be positive: " + turnCap);
+		}
+		this.turnCap = turnCap;
+		this.pieceDistribution = pieceDistribution;
+		this.rows = rows;
+		this.cols = cols;
+		this.scenario = null;
+	}
+
+	/**
+	 * Plays every seed from the starting board of {@code scenario}, with its piece distribution, on the standard board.
+	 */
+	public GameEvaluator(Scenario scenario, int turnCap) {
+		if (turnCap <= 0) {
+			throw new IllegalArgumentException("turn cap must be positive: " + turnCap);
+		}
+		this.turnCap = turnCap;
+		this.pieceDistribution = scenario.getDistribution();
+		this.rows = State.ROWS;
+		this.cols = State.COLS;
+		this.scenario = scenario;
+	}
+
+	public int getTurnCap() {
+		return turnCap;
+	}
+
+	public double[] getPieceDistribution() {
+		return pieceDistribution;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getCols() {
+		return cols;
+	}
+
+	// Scenario games start from, or null for an empty board
+	public Scenario getScenario() {
+		return scenario;
+	}
+
+	public boolean isStandardBoard() {
+		return rows == State.ROWS && cols == State.COLS;
+	}
+
+	/**
+	 * Returns {@code count} consecutive seeds starting at {@code first}.
+	 */
+	public static long[] seeds(long first, int count) {
+		long[] seeds = new long[count];
+		for (int i = 0; i < count; i++) {
+			seeds[i] = first + i;
+		}
+		return seeds;
+	}
+
+	/**
+	 * Plays one game per seed with {@code weights} and returns the combined statistics.
+	 */
+	public Result evaluate(float[] weights, long[] seeds) {
+		PlayerSkeleton p = new PlayerSkeleton(weights);
+		Result result = new Result();
+		for (long seed : seeds) {
+			result.add(play(p, seed));
+		}
+		return result;
+	}
+
+	/**
+	 * Plays a single seeded game until it is lost or reaches the turn cap.
+	 */
+	public State play(PlayerSkeleton p, long seed) {
+		State s = scenario != null ? scenario.newGame(seed) : new State(seed, pieceDistribution, rows, cols);
+		return play(p, s, seed);
+	}
+
+	/**
+	 * Plays {@code s} until it is lost or reaches the turn cap, recording {@link PlayerMetrics} and {@link GameEvents}.
+	 *
+	 * @param seed - seed {@code s} was created from, or {@link GameEvents#UNSEEDED}
+	 */
+	public State play(PlayerSkeleton p, State s, long seed) {
+		PlayerMetrics metrics = PlayerMetrics.get();
+		metrics.gameStarted();
+
+		GameEvents.GameStart start = new GameEvents.GameStart();
+		if (start.shouldCommit()) {
+			start.seed = seed;
+			start.commit();
+		}
+		GameEvents.GameEnd end = new GameEvents.GameEnd();
+		end.begin();
+
+		while (!s.hasLost() && s.getTurnNumber() < turnCap) {
+			playMove(p, s, metrics);
+		}
+
+		end.end();
+		if (end.shouldCommit()) {
+			end.seed = seed;
+			end.turns = s.getTurnNumber();
+			end.rowsCleared = s.getRowsCleared();
+			end.lost = s.hasLost();
+			end.commit();
+		}
+		metrics.gameFinished();
+		return s;
+	}
+
+	// Picks and makes one move, timing the decision
+	private static void playMove(PlayerSkeleton p, State s, PlayerMetrics metrics) {
+		int[][] legalMoves = s.legalMoves();
+		GameEvents.SlowMove event = new GameEvents.SlowMove();
+
+		event.begin();
+		long start = System.nanoTime();
+		int move = p.pickMove(s, legalMoves);
+		long decided = System.nanoTime();
+		event.end();
+
+		if (event.shouldCommit()) {
+			event.turn = s.getTurnNumber();
+			event.piece = s.getNextPiece();
+			event.candidates = legalMoves.length;
+			event.depth = 1;
+			event.stackHeight = GameEvents.stackHeight(s);
+			event.commit();
+		}
+
+		int rows = s.getRowsCleared();
+		s.makeMove(move);
+		metrics.moveMade(decided - start, s.getTurnNumber(), s.getRowsCleared() - rows);
+	}
+
+	/**
+	 * Statistics over a set of games. Results for the same weights can be merged to tighten the estimate.
+	 */
+	public static class Result {
+		// Bucket 0 counts games that cleared no rows, bucket b counts games that cleared 2^(b-1) to 2^b - 1 rows
+		public static final int HISTOGRAM_BUCKETS = 32;
+
+		private int games;
+		private int lost;
+		private long turns;
+		private long rows;
+		private double rowsSquared;
+		private int minRows = Integer.MAX_VALUE;
+		private int maxRows = Integer.MIN_VALUE;
+		private final int[] histogram = new int[HISTOGRAM_BUCKETS];
+
+		public Result() {
+		}
+
+		/**
+		 * Recreates a result from its raw counters, e.g. after reading it back from {@link #toRecord()}.
+		 */
+		public Result(int games, int lost, long turns, long rows, double rowsSquared, int minRows, int maxRows) {
+			this.games = games;
+			this.lost = lost;
+			this.turns = turns;
+			this.rows = rows;
+			this.rowsSquared = rowsSquared;
+			this.minRows = minRows;
+			this.maxRows = maxRows;
+		}
+
+		// Adds a finished (lost or capped) game
+		public void add(State s) {
+			add(s.getRowsCleared(), s.getTurnNumber(), s.hasLost());
+		}
+
+		public void add(int rowsCleared, int turnNumber, boolean hasLost) {
+			games++;
+			if (hasLost) {
+				lost++;
+			}
+			turns += turnNumber;
+			rows += rowsCleared;
+			rowsSquared += (double) rowsCleared * rowsCleared;
+			minRows = Math.min(minRows, rowsCleared);
+			maxRows = Math.max(maxRows, rowsCleared);
+			histogram[bucket(rowsCleared)]++;
+		}
+
+		public void merge(Result other) {
+			games += other.games;
+			lost += other.lost;
+			turns += other.turns;
+			rows += other.rows;
+			rowsSquared += other.rowsSquared;
+			minRows = Math.min(minRows, other.minRows);
+			maxRows = Math.max(maxRows, other.maxRows);
+			for (int b = 0; b < HISTOGRAM_BUCKETS; b++) {
+				histogram[b] += other.histogram[b];
+			}
+		}
+
+		public int getGames() {
+			return games;
+		}
+
+		// Number of games that ended by losing rather than by reaching the turn cap
+		public int getLost() {
+			return lost;
+		}
+
+		public long getTurns() {
+			return turns;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public int getMinRows() {
+			return minRows;
+		}
+
+		public int getMaxRows() {
+			return maxRows;
+		}
+
+		// Games per bucket of rows cleared, see HISTOGRAM_BUCKETS
+		public int[] getHistogram() {
+			return histogram.clone();
+		}
+
+		public static int bucket(int rowsCleared) {
+			return 32 - Integer.numberOfLeadingZeros(rowsCleared);
+		}
+
+		// Mean rows actually cleared, without extrapolating capped games
+		public double getMeanRows() {
+			return games == 0 ? 0 : (double) rows / games;
+		}
+
+		// Sample variance of rows actually cleared
+		public double getVariance() {
+			if (games < 2) {
+				return 0;
+			}
+			return (rowsSquared - (double) rows * rows / games) / (games - 1);
+		}
+
+		// Lines cleared per turn played
+		public double getClearRate() {
+			return turns == 0 ? 0 : (double) rows / turns;
+		}
+
+		/**
+		 * Expected lines cleared per game, extrapolating games that reached the turn cap. If no game was lost the
+		 * estimate is made as if one had been, which gives a conservative lower bound.
+		 */
+		public double getEstimatedRows() {
+			return (double) rows / Math.max(lost, 1);
+		}
+
+		/**
+		 * Single line holding every counter, separated by spaces, and the histogram as comma separated counts without
+		 * trailing zeros. Parsed back by {@link #fromRecord(String)}.
+		 */
+		public String toRecord() {
+			int used = HISTOGRAM_BUCKETS;
+			while (used > 1 && histogram[used - 1] == 0) {
+				used--;
+			}
+			StringBuilder counts = new StringBuilder();
+			for (int b = 0; b < used; b++) {
+				counts.append(b == 0 ? "" : ",").append(histogram[b]);
+			}
+			return games + " " + lost + " " + turns + " " + rows + " " + rowsSquared + " " + minRows + " " + maxRows
+					+ " " + counts;
+		}
+
+		// Records written before the histogram was added have no histogram
+		public static Result fromRecord(String record) {
+			String[] values = record.trim().split(" ");
+			Result result = new Result(Integer.parseInt(values[0]), Integer.parseInt(values[1]),
+					Long.parseLong(values[2]), Long.parseLong(values[3]), Double.parseDouble(values[4]),
+					Integer.parseInt(values[5]), Integer.parseInt(values[6]));
+			if (values.length > 7) {
+				String[] counts = values[7].split(",");
+				for (int b = 0; b < counts.length; b++) {
+					result.histogram[b] = Integer.parseInt(counts[b]);
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return " Ave: " + getMeanRows() + " Min: " + minRows + " Max: " + maxRows + " Var: " + getVariance()
+					+ " Lost: " + lost + "/" + games + " Turns: " + turns + " Estimated: " + getEstimatedRows();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for games, slow moves and tuning iterations.
+ *
+ * When no recording is running, {@code shouldCommit()} is false and the events cost next to nothing. The event objects
+ * do not escape the method that creates them, so the JIT can usually remove the allocation as well.
+ *
+ * Record with e.g. {@code java -XX:StartFlightRecording=filename=play.jfr,settings=profile PlayerSkeleton 100000}.
+ */
+public class GameEvents {
+
+	// Seed recorded for games that were not created from a seed
+	public static final long UNSEEDED = -1;
+
+	@Name("tetris.GameStart")
+	@Label("Game Start")
+	@Category("Tetris")
+	@StackTrace(false)
+	public static class GameStart extends Event {
+		@Label("Seed")
+		long seed;
+	}
+
+	@Name("tetris.GameEnd")
+	@Label("Game End")
+	@Category("Tetris")
+	@Description("Spans the whole game")
+	@StackTrace(false)
+	public static class GameEnd extends Event {
+		@Label("Seed")
+		long seed;
+
+		@Label("Turns")
+		int turns;
+
+		@Label("Rows Cleared")
+		int rowsCleared;
+
+		@Label("Lost")
+		boolean lost;
+	}
+
+	@Name("tetris.SlowMove")
+	@Label("Slow Move")
+	@Category("Tetris")
+	@Description("A pickMove call that took longer than the threshold")
+	@Threshold("1 ms")
+	public static class SlowMove extends Event {
+		@Label("Turn")
+		int turn;
+
+		@Label("Piece")
+		int piece;
+
+		@Label("Candidates Evaluated")
+		int candidates;
+
+		@Label("Search Depth")
+		int depth;
+
+		@Label("Stack Height")
+		int stackHeight;
+	}
+
+	@Name("tetris.TuningIteration")
+	@Label("Tuning Iteration")
+	@Category("Tetris")
+	@StackTrace(false)
+	public static class TuningIteration extends Event {
+		@Label("Iteration")
+		int iteration;
+
+		@Label("Weights")
+		String weights;
+
+		@Label("Fitness")
+		double fitness;
+
+		@Label("Accepted")
+		boolean accepted;
+	}
+
+	// Highest column of the board
+	static int stackHeight(State s) {
+		int max = 0;
+		for (int height : s.getTop()) {
+			max = Math.max(max, height);
+		}
+		return max;
+	}
+}
@@ -0,0 +1,243 @@
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Renders a live or replayed game to a PNG sequence or an animated GIF without a display, by drawing into a
+ * {@link TLabel} that is never shown in a window.
+ *
+ * Each frame is copied out of the label into one of a fixed set of image buffers and encoded on a background pool,
+ * while the game moves on. Once every buffer is waiting to be encoded, {@link #frame(State)} blocks until one is
+ * free. PNG frames are encoded in parallel; GIF frames by a single thread, since they have to be written in order.
+ *
+ * Usage: java -Djava.awt.headless=true GameRenderer output source [every] [max frames]
+ *   output     a file ending in .gif, or a directory to write frame00000.png, frame00001.png, ... into
+ *   source     a replay file written by ReplayRecorder, or the seed of a live game played with parameter.txt
+ *   every      draw one frame every this many moves (default 1)
+ *   max frames stop after this many frames (default: no limit)
+ */
+public class GameRenderer implements Closeable {
+
+	// Same canvas as TFrame
+	public static final int WIDTH = 300;
+	public static final int HEIGHT = 700;
+	public static final int DEFAULT_GIF_DELAY = 50;
+
+	private final TLabel label = new TLabel(WIDTH, HEIGHT);
+	private final StateView view = new StateView(label);
+	private final BlockingQueue<BufferedImage> free;
+	private final ExecutorService pool;
+	private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+	private final File directory;
+	private ImageWriter gifWriter;
+	private ImageOutputStream gifOut;
+	private IIOMetadata gifMetadata;
+	private int frames;
+	private int rows, cols;
+
+	/**
+	 * @param output   - a file ending in .gif, or a directory for a PNG sequence
+	 * @param gifDelay - milliseconds between GIF frames, rounded down to hundredths of a second
+	 */
+	public GameRenderer(String output, int gifDelay) throws IOException {
+		label.BORDER = .05;
+		scale(State.ROWS, State.COLS);
+
+		int threads;
+		if (output.toLowerCase().endsWith(".gif")) {
+			directory = null;
+			threads = 1;
+			gifWriter = ImageIO.getImageWritersByFormatName("gif").next();
+			gifOut = ImageIO.createImageOutputStream(new File(output));
+			gifWriter.setOutput(gifOut);
+			gifMetadata = gifMetadata(gifWriter, gifDelay);
+			gifWriter.prepareWriteSequence(null);
+		} else {
+			directory = new File(output);
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("cannot create " + output);
+			}
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+
+		pool = Executors.newFixedThreadPool(threads);
+		free = new ArrayBlockingQueue<BufferedImage>(2 * threads);
+		for (int i = 0; i < 2 * threads; i++) {
+			free.add(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB));
+		}
+	}
+
+	// Frame delay, and loop forever
+	private static IIOMetadata gifMetadata(ImageWriter writer, int delay) throws IOException {
+		ImageTypeSpecifier type = ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
+		IIOMetadata metadata = writer.getDefaultImageMetadata(type, null);
+		String format = metadata.getNativeMetadataFormatName();
+		IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+		IIOMetadataNode control = new IIOMetadataNode("GraphicControlExtension");
+		control.setAttribute("disposalMethod", "none");
+		control.setAttribute("userInputFlag", "FALSE");
+		control.setAttribute("transparentColorFlag", "FALSE");
+		control.setAttribute("delayTime", Integer.toString(delay / 10));
+		control.setAttribute("transparentColorIndex", "0");
+		root.appendChild(control);
+
+		IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+		loop.setAttribute("applicationID", "NETSCAPE");
+		loop.setAttribute("authenticationCode", "2.0");
+		loop.setUserObject(new byte[] { 1, 0, 0 });
+		IIOMetadataNode extensions = new IIOMetadataNode("ApplicationExtensions");
+		extensions.appendChild(loop);
+		root.appendChild(extensions);
+
+		metadata.setFromTree(format, root);
+		return metadata;
+	}
+
+	// Fits a board of the given size into the frame; the next draw() repaints everything since the size changed
+	private void scale(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		label.setXscale(0, cols);
+		label.setYscale(0, rows+5);
+	}
+
+	/**
+	 * Draws {@code s} and queues it to be encoded as the next frame.
+	 */
+	public void frame(State s) throws IOException, InterruptedException {
+		checkFailure();
+
+		if (s.getRows() != rows || s.getCols() != cols) {
+			scale(s.getRows(), s.getCols());
+		}
+		view.draw(s);
+		view.drawNext(s, 0, 0);
+
+		final BufferedImage image = free.take();
+		label.copyImage(image);
+		final int index = frames++;
+		pool.execute(new Runnable() {
+			public void run() {
+				try {
+					if (gifWriter != null) {
+						gifWriter.writeToSequence(new IIOImage(image, null, gifMetadata), null);
+					} else {
+						ImageIO.write(image, "png", new File(directory, String.format("frame%05d.png", index)));
+					}
+				} catch (IOException e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					free.add(image);
+				}
+			}
+		});
+	}
+
+	private void checkFailure() throws IOException {
+		IOException e = failure.get();
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	public int getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Plays a game with {@code p} from {@code s}, drawing every {@code every} moves and the final board.
+	 */
+	public void renderGame(PlayerSkeleton p, State s, int every, int maxFrames) throws IOException,
+			InterruptedException {
+		frame(s);
+		while (!s.hasLost() && frames < maxFrames) {
+			s.makeMove(p.pickMove(s, s.legalMoves()));
+			if (s.getTurnNumber() % every == 0 || s.hasLost()) {
+				frame(s);
+			}
+		}
+	}
+
+	/**
+	 * Replays a recorded game, drawing every {@code every} moves and the final board.
+	 */
+	public void renderReplay(ReplayReader reader, int every, int maxFrames) throws IOException,
+			InterruptedException {
+		ReplayReader.ReplayState s = new ReplayReader.ReplayState(reader.getRows(), reader.getCols());
+		frame(s);
+		boolean drawn = true;
+		while (frames < maxFrames && reader.playNext(s)) {
+			drawn = s.getTurnNumber() % every == 0;
+			if (drawn) {
+				frame(s);
+			}
+		}
+		if (!drawn && frames < maxFrames) {
+			frame(s);
+		}
+	}
+
+	/**
+	 * Waits for every queued frame to be written.
+	 */
+	public void close() throws IOException {
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (gifWriter != null) {
+			gifWriter.endWriteSequence();
+			gifOut.close();
+			gifWriter.dispose();
+		}
+		checkFailure();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String output = args[0];
+		String source = args[1];
+		int every = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		int maxFrames = args.length > 3 ? Integer.parseInt(args[3]) : Integer.MAX_VALUE;
+
+		long start = System.currentTimeMillis();
+		GameRenderer renderer = new GameRenderer(output, DEFAULT_GIF_DELAY);
+		try {
+			if (new File(source).isFile()) {
+				ReplayReader reader = new ReplayReader(source);
+				try {
+					renderer.renderReplay(reader, every, maxFrames);
+				} finally {
+					reader.close();
+				}
+			} else {
+				float[] weights = ParameterStore.readWeights(PlayerSkeleton.PARAM_FILE_NAME);
+				PlayerSkeleton p = weights == null ? new PlayerSkeleton() : new PlayerSkeleton(weights);
+				renderer.renderGame(p, new State(Long.parseLong(source)), every, maxFrames);
+			}
+		} finally {
+			renderer.close();
+		}
+
+		System.out.println("Wrote " + renderer.getFrames() + " frames to " + output + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+}
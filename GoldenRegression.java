@@ -0,0 +1,195 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a fixed set of seeded games and checks that the player still makes exactly the same moves.
+ *
+ * {@code record} plays the games with a weight file and stores, for every game, the index in {@code legalMoves} of
+ * each move made and the rows cleared, along with the moves per second achieved. {@code check} plays the same games
+ * again and fails at the first game whose moves or rows cleared differ, naming the turn where they diverge. It also
+ * prints the moves per second next to the recorded baseline, so a rewrite of State or SimulatedState can be shown to
+ * be both behavior-identical and faster.
+ *
+ * Usage: java GoldenRegression record|check [weight file] [golden file] [games] [turn cap]
+ */
+public class GoldenRegression {
+
+	public static final String GOLDEN_FILE_NAME = "golden.txt";
+	private static final int DEFAULT_GAMES = 10;
+	private static final int DEFAULT_TURN_CAP = 2000;
+
+	// Move indices are below 36, so each one is stored as a single base 36 digit
+	private static final int RADIX = 36;
+
+	/**
+	 * Outcome of one replayed game.
+	 */
+	static class Game {
+		long seed;
+		int rows;
+		int turns;
+		String moves;
+
+		String toLine() {
+			return "game " + seed + " " + rows + " " + turns + " " + moves;
+		}
+
+		static Game fromLine(String line) {
+			String[] values = line.split(" ");
+			Game game = new Game();
+			game.seed = Long.parseLong(values[1]);
+			game.rows = Integer.parseInt(values[2]);
+			game.turns = Integer.parseInt(values[3]);
+			game.moves = values.length > 4 ? values[4] : "";
+			return game;
+		}
+	}
+
+	/**
+	 * Plays one seeded game, recording every move index made.
+	 */
+	static Game play(PlayerSkeleton p, long seed, int turnCap) {
+		State s = new State(seed);
+		StringBuilder moves = new StringBuilder();
+		while (!s.hasLost() && s.getTurnNumber() < turnCap) {
+			int move = p.pickMove(s, s.legalMoves());
+			moves.append(Character.forDigit(move, RADIX));
+			s.makeMove(move);
+		}
+
+		Game game = new Game();
+		game.seed = seed;
+		game.rows = s.getRowsCleared();
+		game.turns = s.getTurnNumber();
+		game.moves = moves.toString();
+		return game;
+	}
+
+	/**
+	 * Plays {@code seeds} with {@code weights}. The moves per second achieved are stored in {@code speed[0]}.
+	 */
+	static List<Game> playAll(float[] weights, long[] seeds, int turnCap, double[] speed) {
+		PlayerSkeleton p = new PlayerSkeleton(weights);
+
+		// One untimed game so that the timing below measures compiled code
+		play(p, seeds[0], turnCap);
+
+		List<Game> games = new ArrayList<Game>();
+		long moves = 0;
+		long start = System.nanoTime();
+		for (long seed : seeds) {
+			Game game = play(p, seed, turnCap);
+			moves += game.moves.length();
+			games.add(game);
+		}
+		speed[0] = moves * 1e9 / (System.nanoTime() - start);
+		return games;
+	}
+
+	static void record(float[] weights, String goldenFile, int count, int turnCap) throws IOException {
+		double[] speed = new double[1];
+		List<Game> games = playAll(weights, GameEvaluator.seeds(0, count), turnCap, speed);
+
+		StringBuilder content = new StringBuilder();
+		content.append("weights ").append(ParameterStore.formatWeights(weights)).append('\n');
+		content.append("turnCap ").append(turnCap).append('\n');
+		content.append("movesPerSecond ").append(speed[0]).append('\n');
+		for (Game game : games) {
+			content.append(game.toLine()).append('\n');
+		}
+		ParameterStore.writeAtomically(goldenFile, content.toString());
+
+		System.out.println("Recorded " + games.size() + " games at " + Math.round(speed[0]) + " moves/s to "
+				+ goldenFile);
+	}
+
+	/**
+	 * @return true if every game matches the golden file
+	 */
+	static boolean check(float[] weights, String goldenFile) throws IOException {
+		float[] goldenWeights = null;
+		int turnCap = DEFAULT_TURN_CAP;
+		double baseline = 0;
+		List<Game> golden = new ArrayList<Game>();
+
+		BufferedReader reader = new BufferedReader(new FileReader(goldenFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("weights ")) {
+					goldenWeights = ParameterStore.parseWeights(line.substring("weights ".length()));
+				} else if (line.startsWith("turnCap ")) {
+					turnCap = Integer.parseInt(line.substring("turnCap ".length()).trim());
+				} else if (line.startsWith("movesPerSecond ")) {
+					baseline = Double.parseDouble(line.substring("movesPerSecond ".length()).trim());
+				} else if (line.startsWith("game ")) {
+					golden.add(Game.fromLine(line));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		if (weights == null) {
+			weights = goldenWeights;
+		} else if (goldenWeights != null && !ParameterStore.formatWeights(weights)
+				.equals(ParameterStore.formatWeights(goldenWeights))) {
+			System.out.println("Warning: weights differ from those the golden file was recorded with");
+		}
+
+		long[] seeds = new long[golden.size()];
+		for (int i = 0; i < seeds.length; i++) {
+			seeds[i] = golden.get(i).seed;
+		}
+
+		double[] speed = new double[1];
+		List<Game> games = playAll(weights, seeds, turnCap, speed);
+
+		boolean identical = true;
+		for (int i = 0; i < games.size(); i++) {
+			Game expected = golden.get(i);
+			Game actual = games.get(i);
+			if (expected.moves.equals(actual.moves) && expected.rows == actual.rows) {
+				continue;
+			}
+
+			identical = false;
+			int turn = 0;
+			while (turn < Math.min(expected.moves.length(), actual.moves.length())
+					&& expected.moves.charAt(turn) == actual.moves.charAt(turn)) {
+				turn++;
+			}
+			System.out.println("Seed " + expected.seed + " diverges at turn " + (turn + 1) + ": expected "
+					+ expected.rows + " rows in " + expected.turns + " turns, got " + actual.rows + " rows in "
+					+ actual.turns + " turns");
+		}
+
+		System.out.println((identical ? "All " + games.size() + " games identical" : "Games differ") + ", "
+				+ Math.round(speed[0]) + " moves/s against a baseline of " + Math.round(baseline) + " ("
+				+ String.format("%.2f", speed[0] / baseline) + "x)");
+		return identical;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String mode = args.length > 0 ? args[0] : "check";
+		float[] weights = args.length > 1 ? ParameterStore.readWeights(args[1]) : null;
+		String goldenFile = args.length > 2 ? args[2] : GOLDEN_FILE_NAME;
+		int count = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_GAMES;
+		int turnCap = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_TURN_CAP;
+
+		if (mode.equals("record")) {
+			if (weights == null) {
+				weights = ParameterStore.readWeights(PlayerSkeleton.PARAM_FILE_NAME);
+			}
+			if (weights == null) {
+				weights = PlayerSkeleton.getMultiplierWeights();
+			}
+			record(weights, goldenFile, count, turnCap);
+		} else if (!check(weights, goldenFile)) {
+			System.exit(1);
+		}
+	}
+}
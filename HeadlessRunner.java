@@ -0,0 +1,210 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a batch of games from the command line without prompting for input and without loading any AWT or Swing
+ * classes, so it starts quickly and runs on machines without a display.
+ *
+ * Options, all optional:
+ *   --games N            number of games (default 30)
+ *   --threads N          games played in parallel (default: number of processors)
+ *   --seed-start N       seed of the first game, the others follow consecutively (default 0)
+ *   --seeds a,b,c        explicit seeds, overrides --games and --seed-start
+ *   --weights FILE       weight file in the parameter.txt format (default parameter.txt)
+ *   --player MODE        greedy (PlayerSkeleton) or random (uniform legal moves) (default greedy)
+ *   --distribution D     uniform or hard (see GameEvaluator.HARD_DISTRIBUTION) (default uniform)
+ *   --turn-cap N         stop every game after N turns (default: no cap)
+ *   --rows N             board height (default 21)
+ *   --cols N             board width (default 10)
+ *   --scenario NAME      start every game from a Scenario, with its piece distribution (default: empty board)
+ *   --format F           text, csv or binary (default text)
+ *   --out FILE           write results to FILE instead of standard output
+ *
+ * The binary format is one big-endian record per game: seed (long), rows cleared (int), turns (int), lost (byte).
+ */
+public class HeadlessRunner {
+
+	public static final String TEXT = "text";
+	public static final String CSV = "csv";
+	public static final String BINARY = "binary";
+
+	/**
+	 * Player that picks a uniformly random legal move, as a baseline.
+	 */
+	static class RandomPlayer extends PlayerSkeleton {
+		@Override
+		public int pickMove(State s, int[][] legalMoves) {
+			return ThreadLocalRandom.current().nextInt(legalMoves.length);
+		}
+	}
+
+	private int games = 30;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long seedStart = 0;
+	private long[] seeds;
+	private String weightFile = PlayerSkeleton.PARAM_FILE_NAME;
+	private String player = "greedy";
+	private double[] distribution;
+	private int turnCap = GameEvaluator.NO_CAP;
+	private int rows = State.ROWS;
+	private int cols = State.COLS;
+	private Scenario scenario;
+	private String format = TEXT;
+	private String outFile;
+
+	// Output shared by the game threads
+	private PrintStream text;
+	private DataOutputStream binary;
+
+	HeadlessRunner(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("missing value for " + option);
+			}
+			String value = args[++i];
+
+			if (option.equals("--games")) {
+				games = Integer.parseInt(value);
+			} else if (option.equals("--threads")) {
+				threads = Integer.parseInt(value);
+			} else if (option.equals("--seed-start")) {
+				seedStart = Long.parseLong(value);
+			} else if (option.equals("--seeds")) {
+				String[] values = value.split(",");
+				seeds = new long[values.length];
+				for (int j = 0; j < values.length; j++) {
+					seeds[j] = Long.parseLong(values[j]);
+				}
+			} else if (option.equals("--weights")) {
+				weightFile = value;
+			} else if (option.equals("--player")) {
+				player = value;
+			} else if (option.equals("--distribution")) {
+				distribution = value.equals("hard") ? GameEvaluator.HARD_DISTRIBUTION : null;
+			} else if (option.equals("--turn-cap")) {
+				turnCap = Integer.parseInt(value);
+			} else if (option.equals("--rows")) {
+				rows = Integer.parseInt(value);
+			} else if (option.equals("--cols")) {
+				cols = Integer.parseInt(value);
+			} else if (option.equals("--scenario")) {
+				scenario = Scenario.get(value);
+			} else if (option.equals("--format")) {
+				format = value;
+			} else if (option.equals("--out")) {
+				outFile = value;
+			} else {
+				throw new IllegalArgumentException("unknown option " + option);
+			}
+		}
+
+		if (scenario != null && (rows != State.ROWS || cols != State.COLS)) {
+			throw new IllegalArgumentException("scenarios are played on the standard board");
+		}
+		if (seeds == null) {
+			seeds = GameEvaluator.seeds(seedStart, games);
+		}
+		if (!format.equals(TEXT) && !format.equals(CSV) && !format.equals(BINARY)) {
+			throw new IllegalArgumentException("unknown format " + format);
+		}
+	}
+
+	PlayerSkeleton createPlayer() throws IOException {
+		if (player.equals("random")) {
+			return new RandomPlayer();
+		}
+		if (!player.equals("greedy")) {
+			throw new IllegalArgumentException("unknown player " + player);
+		}
+
+		float[] weights = ParameterStore.readWeights(weightFile);
+		return weights == null ? new PlayerSkeleton() : new PlayerSkeleton(weights);
+	}
+
+	GameEvaluator.Result run() throws IOException, InterruptedException {
+		OutputStream out = outFile == null ? System.out : new FileOutputStream(outFile);
+		if (format.equals(BINARY)) {
+			binary = new DataOutputStream(new BufferedOutputStream(out));
+		} else {
+			text = new PrintStream(new BufferedOutputStream(out), false, "UTF-8");
+			if (format.equals(CSV)) {
+				text.println("seed,rows,turns,lost,millis");
+			}
+		}
+
+		final PlayerSkeleton p = createPlayer();
+		final GameEvaluator evaluator = scenario != null ? new GameEvaluator(scenario, turnCap)
+				: new GameEvaluator(turnCap, distribution, rows, cols);
+		final GameEvaluator.Result result = new GameEvaluator.Result();
+		final IOException[] failure = new IOException[1];
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for (final long seed : seeds) {
+			pool.execute(new Runnable() {
+				public void run() {
+					long start = System.currentTimeMillis();
+					State s = evaluator.play(p, seed);
+					long millis = System.currentTimeMillis() - start;
+
+					synchronized (result) {
+						result.add(s);
+						try {
+							report(seed, s, millis);
+						} catch (IOException e) {
+							failure[0] = e;
+						}
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		if (text != null) {
+			if (format.equals(TEXT)) {
+				text.println(result);
+			}
+			text.flush();
+			if (outFile != null) {
+				text.close();
+			}
+		} else {
+			binary.flush();
+			if (outFile != null) {
+				binary.close();
+			}
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return result;
+	}
+
+	// Called with the result lock held
+	private void report(long seed, State s, long millis) throws IOException {
+		if (format.equals(TEXT)) {
+			text.println("Seed " + seed + ": you have completed " + s.getRowsCleared() + " rows in "
+					+ s.getTurnNumber() + " turns.");
+		} else if (format.equals(CSV)) {
+			text.println(seed + "," + s.getRowsCleared() + "," + s.getTurnNumber() + "," + s.hasLost() + "," + millis);
+		} else {
+			binary.writeLong(seed);
+			binary.writeInt(s.getRowsCleared());
+			binary.writeInt(s.getTurnNumber());
+			binary.writeByte(s.hasLost() ? 1 : 0);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		new HeadlessRunner(args).run();
+	}
+}
@@ -0,0 +1,83 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Checks that a history line torn by a crash is never counted, wherever it was cut, and that the next line appended
+ * after it is. Every cut of the last line is tried in turn, from its first byte to the one before its newline, which
+ * covers lines cut after the seventh counter and within the histogram, both of which still parse. Exits with status 1
+ * if any cut is miscounted.
+ *
+ * Usage: java HistoryTornTailCheck
+ */
+public class HistoryTornTailCheck {
+
+	private static final int ENTRIES = 3;
+
+	public static void main(String[] args) throws IOException {
+		File file = File.createTempFile("history", ".txt");
+		file.deleteOnExit();
+		String fileName = file.getPath();
+
+		float[] weights = PlayerSkeleton.getMultiplierWeights();
+		GameEvaluator.Result result = new GameEvaluator(200, null).evaluate(weights, GameEvaluator.seeds(0, 4));
+
+		int failures = 0;
+		int cuts = 0;
+		long complete = -1;
+		while (true) {
+			file.delete();
+			for (int i = 0; i < ENTRIES; i++) {
+				ParameterStore.appendHistory(fileName, i, weights, result);
+			}
+			if (complete < 0) {
+				// Length of the file without its last line
+				complete = lastLineStart(file, file.length() - 1);
+			}
+			long cut = complete + cuts;
+			if (cut >= file.length()) {
+				break;
+			}
+			cuts++;
+
+			RandomAccessFile torn = new RandomAccessFile(file, "rw");
+			try {
+				torn.setLength(cut);
+			} finally {
+				torn.close();
+			}
+			int before = ParameterStore.countHistory(fileName);
+			ParameterStore.appendHistory(fileName, ENTRIES, weights, result);
+			int after = ParameterStore.countHistory(fileName);
+			if (before != ENTRIES - 1 || after != ENTRIES) {
+				System.out.println("Cut at byte " + cut + ": " + before + " entries, " + after + " after appending,"
+						+ " expected " + (ENTRIES - 1) + " and " + ENTRIES);
+				failures++;
+			}
+		}
+
+		if (failures > 0) {
+			System.out.println(failures + " of " + cuts + " cuts miscounted");
+			System.exit(1);
+		}
+		System.out.println("All " + cuts + " cuts of the last line skipped, and the line after them counted");
+	}
+
+	// Offset of the first byte of the line that ends at offset end
+	private static long lastLineStart(File file, long end) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			long start = end;
+			while (start > 0) {
+				in.seek(start - 1);
+				if (in.read() == '\n') {
+					break;
+				}
+				start--;
+			}
+			return start;
+		} finally {
+			in.close();
+		}
+	}
+}
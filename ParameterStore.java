@@ -0,0 +1,237 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Crash-safe storage for weights and tuning progress.
+ *
+ * Files that are rewritten (parameter.txt, checkpoints) are first written to a temporary file in the same directory,
+ * synced, and then renamed over the old file, whose directory is synced in turn, so a crash leaves either the old or
+ * the new content but never half a file. The history of evaluated weights is append-only, one line per evaluation. A
+ * torn last line, one without its newline, is skipped when read back and cut off before the next line is appended.
+ */
+public class ParameterStore {
+
+	public static final String HISTORY_FILE_NAME = "history.txt";
+	public static final String CHECKPOINT_FILE_NAME = "checkpoint.txt";
+
+	/********************************* Atomic writes *********************************/
+
+	/**
+	 * Replaces the contents of {@code fileName} with {@code content} in one step.
+	 */
+	public static void writeAtomically(String fileName, String content) throws IOException {
+		File file = new File(fileName).getAbsoluteFile();
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		syncDirectory(file.getParentFile());
+	}
+
+	// Makes the rename itself durable. Some platforms cannot open a directory, and they do not need this.
+	private static void syncDirectory(File directory) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+		} catch (IOException e) {
+			return;
+		}
+		try {
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/********************************* Weights *********************************/
+
+	// Weights as one line of parameter.txt, separated by spaces
+	public static String formatWeights(float[] weights) {
+		StringBuilder line = new StringBuilder().append(weights[0]);
+		for (int i = 1; i < weights.length; i++) {
+			line.append(' ').append(weights[i]);
+		}
+		return line.toString();
+	}
+
+	public static float[] parseWeights(String line) {
+		String[] values = line.trim().split("\\s+");
+		float[] weights = new float[values.length];
+		for (int i = 0; i < values.length; i++) {
+			weights[i] = Float.parseFloat(values[i]);
+		}
+		return weights;
+	}
+
+	/**
+	 * Reads the weights on the first line of a file in the parameter.txt format, or returns null if the file is missing
+	 * or empty.
+	 */
+	public static float[] readWeights(String fileName) throws IOException {
+		if (!new File(fileName).exists()) {
+			return null;
+		}
+
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			String line = reader.readLine();
+			return line == null || line.trim().isEmpty() ? null : parseWeights(line);
+		} finally {
+			reader.close();
+		}
+	}
+
+	public static void saveWeights(String fileName, float[] weights) throws IOException {
+		writeAtomically(fileName, formatWeights(weights) + "\n");
+	}
+
+	/********************************* History *********************************/
+
+	/**
+	 * Appends one evaluated weight vector to the history as {@code iteration | weights | result record}. The line is
+	 * synced to disk before returning.
+	 */
+	public static void appendHistory(String fileName, int iteration, float[] weights, GameEvaluator.Result result)
+			throws IOException {
+		String line = iteration + " | " + formatWeights(weights) + " | " + result.toRecord() + "\n";
+		// Cut off a line torn by a crash, which ending with the newline of this one would make look complete
+		truncateTornLine(fileName);
+
+		FileOutputStream out = new FileOutputStream(fileName, true);
+		try {
+			out.write(line.getBytes(StandardCharsets.UTF_8));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	// Shortens the file to its last newline, if it does not end in one
+	private static void truncateTornLine(String fileName) throws IOException {
+		File file = new File(fileName);
+		if (!file.exists()) {
+			return;
+		}
+		RandomAccessFile history = new RandomAccessFile(file, "rw");
+		try {
+			long end = history.length();
+			while (end > 0) {
+				history.seek(end - 1);
+				if (history.read() == '\n') {
+					break;
+				}
+				end--;
+			}
+			if (end < history.length()) {
+				history.setLength(end);
+				history.getFD().sync();
+			}
+		} finally {
+			history.close();
+		}
+	}
+
+	/**
+	 * Returns the number of complete entries in the history file. Only lines that end in a newline count, since a
+	 * line torn by a crash can still parse, e.g. one cut off after the seventh counter or within the histogram.
+	 */
+	public static int countHistory(String fileName) throws IOException {
+		if (!new File(fileName).exists()) {
+			return 0;
+		}
+
+		int count = 0;
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = reader.read()) >= 0) {
+				if (c != '\n') {
+					line.append((char) c);
+					continue;
+				}
+				String[] parts = line.toString().split(" \\| ");
+				if (parts.length == 3 && isRecord(parts[2])) {
+					count++;
+				}
+				line.setLength(0);
+			}
+			// Anything left in line was never terminated
+		} finally {
+			reader.close();
+		}
+		return count;
+	}
+
+	// Whether a history line ends in a whole result record, with or without the histogram
+	private static boolean isRecord(String record) {
+		try {
+			GameEvaluator.Result.fromRecord(record);
+			return true;
+		} catch (RuntimeException e) {
+			// Torn or garbled line
+			return false;
+		}
+	}
+
+	/********************************* Checkpoints *********************************/
+
+	/**
+	 * Writes {@code key=value} pairs to the checkpoint file atomically.
+	 */
+	public static void writeCheckpoint(String fileName, Map<String, String> values) throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			content.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		}
+		writeAtomically(fileName, content.toString());
+	}
+
+	/**
+	 * Reads back a checkpoint written by {@link #writeCheckpoint(String, Map)}, or returns null if there is none.
+	 */
+	public static Map<String, String> readCheckpoint(String fileName) throws IOException {
+		if (!new File(fileName).exists()) {
+			return null;
+		}
+
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int split = line.indexOf('=');
+				if (split > 0) {
+					values.put(line.substring(0, split), line.substring(split + 1));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return values;
+	}
+}
@@ -0,0 +1,261 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the throughput and allocation of the simulation and evaluation hot paths.
+ *
+ * Every benchmark runs over a corpus of mid-game boards, taken from seeded games played by the default player, so the
+ * numbers reflect realistic stack heights rather than an empty board. Each benchmark is warmed up before it is
+ * measured, and the bytes allocated per operation are read from the JVM's per-thread allocation counter.
+ *
+ * Given a {@link Scenario} name, the corpus is instead the scenario's starting boards, one per seed, to see what the
+ * hot paths cost on the tall stacks and holes that seeded games rarely reach.
+ *
+ * Usage: java PlayerBenchmark [warmup seconds] [measure seconds] [name filter|-] [scenario]
+ */
+public class PlayerBenchmark {
+
+	private static final int CORPUS_SIZE = 64;
+	private static final long CORPUS_SEED = 42;
+
+	// Results are folded into this so the JIT cannot drop the work being measured
+	static volatile long sink;
+
+	/**
+	 * One benchmarked operation. {@code run} performs it once on board {@code i} of the corpus.
+	 */
+	public abstract static class Operation {
+		final String name;
+
+		public Operation(String name) {
+			this.name = name;
+		}
+
+		abstract long run(int i);
+	}
+
+	/**
+	 * Plays seeded games with the default weights and keeps one board from each, taken somewhere between turn 20 and
+	 * 300 so that the corpus covers low and high stacks.
+	 */
+	public static State[] midGameBoards(int count, long seed) {
+		return midGameBoards(count, seed, State.ROWS, State.COLS);
+	}
+
+	/**
+	 * Like {@link #midGameBoards(int, long)} on a board of {@code rows} by {@code cols}, with the turn range scaled by
+	 * the board's area so that stacks reach comparable heights.
+	 */
+	public static State[] midGameBoards(int count, long seed, int rows, int cols) {
+		PlayerSkeleton p = new PlayerSkeleton();
+		double area = (double) rows * cols / (State.ROWS * State.COLS);
+		State[] boards = new State[count];
+		for (int i = 0; i < count; i++) {
+			State s = new State(seed + i, null, rows, cols);
+			int stopAt = (int) ((20 + new Random(seed + i).nextInt(280)) * area);
+			while (!s.hasLost() && s.getTurnNumber() < stopAt) {
+				s.makeMove(p.pickMove(s, s.legalMoves()));
+			}
+			if (s.hasLost()) {
+				// Start over on a fresh seed so every board is playable
+				boards[i] = midGameBoards(1, seed + count + i, rows, cols)[0];
+			} else {
+				boards[i] = s;
+			}
+		}
+		return boards;
+	}
+
+	/**
+	 * The starting boards of {@code count} seeded games of {@code scenario}.
+	 */
+	public static State[] scenarioBoards(Scenario scenario, int count, long seed) {
+		State[] boards = new State[count];
+		for (int i = 0; i < count; i++) {
+			boards[i] = scenario.newGame(seed + i);
+		}
+		return boards;
+	}
+
+	/**
+	 * The standard set of benchmarks over {@code boards}.
+	 */
+	public static List<Operation> operations(final State[] boards) {
+		final PlayerSkeleton p = new PlayerSkeleton();
+		final int n = boards.length;
+		List<Operation> operations = new ArrayList<Operation>();
+
+		operations.add(new Operation("State.copy") {
+			long run(int i) {
+				return new State(boards[i % n]).getTurnNumber();
+			}
+		});
+		operations.add(new Operation("State.makeMove") {
+			long run(int i) {
+				State s = new State(boards[i % n]);
+				int[][] moves = s.legalMoves();
+				s.makeMove(moves[i % moves.length]);
+				return s.getRowsCleared();
+			}
+		});
+
+		// Moves that clear at least one row, one per corpus board that has one
+		final List<State> clearingBoards = new ArrayList<State>();
+		final List<Integer> clearingMoves = new ArrayList<Integer>();
+		for (State board : boards) {
+			for (int m = 0; m < board.legalMoves().length; m++) {
+				State s = new State(board);
+				s.makeMove(m);
+				if (s.getRowsCleared() > board.getRowsCleared()) {
+					clearingBoards.add(board);
+					clearingMoves.add(m);
+					break;
+				}
+			}
+		}
+		if (clearingBoards.isEmpty()) {
+			// E.g. the starting boards of an empty-board scenario
+			System.out.println("Skipping State.makeMove clearing rows: no corpus board has a move that clears a row");
+		} else {
+			operations.add(new Operation("State.makeMove clearing rows") {
+				long run(int i) {
+					int k = i % clearingBoards.size();
+					State s = new State(clearingBoards.get(k));
+					s.makeMove(clearingMoves.get(k));
+					return s.getRowsCleared();
+				}
+			});
+		}
+		operations.add(new Operation("PlayerSkeleton.pickMove") {
+			long run(int i) {
+				State s = boards[i % n];
+				return p.pickMove(s, s.legalMoves());
+			}
+		});
+		final ContourCache contours = new ContourCache();
+		final PlayerSkeleton cached = new PlayerSkeleton(PlayerSkeleton.getMultiplierWeights(), contours);
+		operations.add(new Operation("pickMove with ContourCache") {
+			long run(int i) {
+				State s = boards[i % n];
+				return cached.pickMove(s, s.legalMoves());
+			}
+		});
+		operations.add(new Operation("ContourCache.get") {
+			long run(int i) {
+				return contours.get(boards[i % n].getTop()).bumpiness;
+			}
+		});
+		operations.add(new Operation("SimulatedState.getMoveValue") {
+			long run(int i) {
+				State s = boards[i % n];
+				int[][] moves = s.legalMoves();
+				return (long) p.new SimulatedState(s).getMoveValue(moves[i % moves.length]);
+			}
+		});
+
+		// Feature methods only read the board, so one SimulatedState per corpus board is enough
+		final PlayerSkeleton.SimulatedState[] simulated = new PlayerSkeleton.SimulatedState[n];
+		for (int i = 0; i < n; i++) {
+			simulated[i] = p.new SimulatedState(boards[i]);
+		}
+		operations.add(new Operation("getGlitchCount") {
+			long run(int i) {
+				return simulated[i % n].getGlitchCount(boards[i % n].getField(), boards[i % n].getTop());
+			}
+		});
+		operations.add(new Operation("getVerticalHeightHoles") {
+			long run(int i) {
+				return simulated[i % n].getVerticalHeightHoles(boards[i % n].getField(), boards[i % n].getTop());
+			}
+		});
+		operations.add(new Operation("getBumpiness") {
+			long run(int i) {
+				return simulated[i % n].getBumpiness(boards[i % n].getTop());
+			}
+		});
+		operations.add(new Operation("getTotalHeight") {
+			long run(int i) {
+				return simulated[i % n].getTotalHeight(boards[i % n].getTop());
+			}
+		});
+		operations.add(new Operation("getSumofAllWells") {
+			long run(int i) {
+				return simulated[i % n].getSumofAllWells(boards[i % n].getField());
+			}
+		});
+		operations.add(new Operation("getMaxWellDepth") {
+			long run(int i) {
+				return simulated[i % n].getMaxWellDepth(boards[i % n].getField());
+			}
+		});
+		return operations;
+	}
+
+	/**
+	 * Runs {@code operation} for {@code warmupMillis}, then measures it for {@code measureMillis}.
+	 *
+	 * @return {operations per second, bytes allocated per operation}
+	 */
+	public static double[] measure(Operation operation, long warmupMillis, long measureMillis) {
+		runFor(operation, warmupMillis);
+
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long ops = runFor(operation, measureMillis);
+		long elapsed = System.nanoTime() - start;
+		long bytes = allocatedBytes() - bytesBefore;
+
+		return new double[] {ops * 1e9 / elapsed, (double) bytes / ops};
+	}
+
+	// Runs the operation in batches until the time is up, returning the number of operations
+	private static long runFor(Operation operation, long millis) {
+		long deadline = System.nanoTime() + millis * 1000000L;
+		long ops = 0;
+		long result = 0;
+		int batch = 16;
+		while (System.nanoTime() < deadline) {
+			for (int i = 0; i < batch; i++) {
+				result += operation.run((int) (ops + i));
+			}
+			ops += batch;
+			if (batch < 4096) {
+				batch *= 2;
+			}
+		}
+		sink += result;
+		return ops;
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	public static void report(List<Operation> operations, long warmupMillis, long measureMillis, String filter) {
+		System.out.println(String.format("%-32s %16s %12s %12s", "Benchmark", "ops/s", "ns/op", "B/op"));
+		for (Operation operation : operations) {
+			if (filter != null && !operation.name.contains(filter)) {
+				continue;
+			}
+			double[] result = measure(operation, warmupMillis, measureMillis);
+			System.out.println(String.format("%-32s %16.1f %12.1f %12.1f", operation.name, result[0],
+					1e9 / result[0], result[1]));
+		}
+	}
+
+	public static void main(String[] args) {
+		long warmupMillis = args.length > 0 ? (long) (Double.parseDouble(args[0]) * 1000) : 2000;
+		long measureMillis = args.length > 1 ? (long) (Double.parseDouble(args[1]) * 1000) : 3000;
+		String filter = args.length > 2 && !args[2].equals("-") ? args[2] : null;
+		State[] boards = args.length > 3 ? scenarioBoards(Scenario.get(args[3]), CORPUS_SIZE, CORPUS_SEED)
+				: midGameBoards(CORPUS_SIZE, CORPUS_SEED);
+
+		report(operations(boards), warmupMillis, measureMillis, filter);
+	}
+}
@@ -0,0 +1,235 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live counters of every game played in this JVM, published over JMX as {@code TetrisPlayer:type=PlayerMetrics}.
+ *
+ * Game threads only add to {@link LongAdder}s, which spread contended updates over separate cells, so recording a move
+ * costs a few nanoseconds even with many threads. Rates are computed by a background thread once per
+ * {@link #SAMPLE_SECONDS}, so every JMX client sees the same numbers however often it scrapes.
+ */
+public class PlayerMetrics implements PlayerMetricsMBean {
+
+	public static final String OBJECT_NAME = "TetrisPlayer:type=PlayerMetrics";
+	private static final int SAMPLE_SECONDS = 1;
+	private static final int BUCKETS = 40;
+
+	private static final PlayerMetrics INSTANCE = new PlayerMetrics();
+
+	private final LongAdder moves = new LongAdder();
+	private final LongAdder games = new LongAdder();
+	private final LongAdder gamesInProgress = new LongAdder();
+	private final LongAdder rowsCleared = new LongAdder();
+	private final LongAdder decisionNanos = new LongAdder();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	private final AtomicLong currentTurn = new AtomicLong();
+
+	// Bucket i counts decisions that took [2^i, 2^(i+1)) nanoseconds
+	private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+	private volatile double movesPerSecond;
+	private volatile double gamesPerSecond;
+	private long lastMoves;
+	private long lastGames;
+	private long lastSample = System.nanoTime();
+
+	private ScheduledExecutorService sampler;
+
+	private PlayerMetrics() {
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram[i] = new LongAdder();
+		}
+	}
+
+	public static PlayerMetrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Publishes the metrics over JMX and starts sampling rates. Calling it again has no effect.
+	 */
+	public static synchronized void register() {
+		if (INSTANCE.sampler != null) {
+			return;
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		} catch (Exception e) {
+			e.printStackTrace();
+			return;
+		}
+
+		INSTANCE.sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "player-metrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		INSTANCE.sampler.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				INSTANCE.sample();
+			}
+		}, SAMPLE_SECONDS, SAMPLE_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/********************************* Recording *********************************/
+
+	public void gameStarted() {
+		gamesInProgress.increment();
+	}
+
+	public void gameFinished() {
+		gamesInProgress.decrement();
+		games.increment();
+	}
+
+	/**
+	 * Records one move that took {@code nanos} to decide on, was turn {@code turn} of its game and cleared {@code rows}.
+	 */
+	public void moveMade(long nanos, int turn, int rows) {
+		moves.increment();
+		decisionNanos.add(nanos);
+		histogram[bucket(nanos)].increment();
+		if (rows > 0) {
+			rowsCleared.add(rows);
+		}
+		currentTurn.lazySet(turn);
+	}
+
+	public void cacheHit() {
+		cacheHits.increment();
+	}
+
+	public void cacheMiss() {
+		cacheMisses.increment();
+	}
+
+	private static int bucket(long nanos) {
+		return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+	}
+
+	private synchronized void sample() {
+		long now = System.nanoTime();
+		long currentMoves = moves.sum();
+		long currentGames = games.sum();
+		double seconds = (now - lastSample) / 1e9;
+
+		movesPerSecond = (currentMoves - lastMoves) / seconds;
+		gamesPerSecond = (currentGames - lastGames) / seconds;
+		lastMoves = currentMoves;
+		lastGames = currentGames;
+		lastSample = now;
+	}
+
+	/********************************* MBean *********************************/
+
+	public long getMoves() {
+		return moves.sum();
+	}
+
+	public long getGames() {
+		return games.sum();
+	}
+
+	public long getGamesInProgress() {
+		return gamesInProgress.sum();
+	}
+
+	public long getRowsCleared() {
+		return rowsCleared.sum();
+	}
+
+	public long getCurrentTurn() {
+		return currentTurn.get();
+	}
+
+	public double getMovesPerSecond() {
+		return movesPerSecond;
+	}
+
+	public double getGamesPerSecond() {
+		return gamesPerSecond;
+	}
+
+	public double getMeanDecisionMicros() {
+		long count = moves.sum();
+		return count == 0 ? 0 : decisionNanos.sum() / 1e3 / count;
+	}
+
+	public double getDecisionP50Micros() {
+		return percentileMicros(0.5);
+	}
+
+	public double getDecisionP99Micros() {
+		return percentileMicros(0.99);
+	}
+
+	public long[] getDecisionLatencyHistogram() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = histogram[i].sum();
+		}
+		return counts;
+	}
+
+	// Upper bound of the bucket holding the given fraction of decisions
+	private double percentileMicros(double fraction) {
+		long[] counts = getDecisionLatencyHistogram();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= fraction * total) {
+				return (2L << i) / 1e3;
+			}
+		}
+		return (2L << (BUCKETS - 1)) / 1e3;
+	}
+
+	public long getCacheHits() {
+		return cacheHits.sum();
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	public double getCacheHitRate() {
+		long hits = cacheHits.sum();
+		long total = hits + cacheMisses.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	public synchronized void reset() {
+		moves.reset();
+		games.reset();
+		rowsCleared.reset();
+		decisionNanos.reset();
+		cacheHits.reset();
+		cacheMisses.reset();
+		for (LongAdder bucket : histogram) {
+			bucket.reset();
+		}
+		lastMoves = 0;
+		lastGames = 0;
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * Management interface of {@link PlayerMetrics}, as seen by JMX clients.
+ */
+public interface PlayerMetricsMBean {
+
+	long getMoves();
+
+	long getGames();
+
+	long getGamesInProgress();
+
+	long getRowsCleared();
+
+	// Turn number of the game that moved most recently
+	long getCurrentTurn();
+
+	// Rates over the last sampling interval
+	double getMovesPerSecond();
+
+	double getGamesPerSecond();
+
+	double getMeanDecisionMicros();
+
+	double getDecisionP50Micros();
+
+	double getDecisionP99Micros();
+
+	// Number of pickMove calls whose duration falls in each power-of-two bucket of nanoseconds
+	long[] getDecisionLatencyHistogram();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	double getCacheHitRate();
+
+	void reset();
+}
@@ -1,21 +1,19 @@
 import java.util.Scanner;
 
-import java.io.FileWriter;
 import java.io.FileReader;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
 
 public class PlayerSkeleton {
 
 	/********************************* Multipliers to determine value of simulated move *********************************/
-	private static final int NUM_PARAMETERS = 6;
-	private static final int ROWS_CLEARED_MULT_INDEX = 0;
-	private static final int GLITCH_COUNT_MULT_INDEX = 1;
-	private static final int BUMPINESS_MULT_INDEX = 2;
-	private static final int TOTAL_HEIGHT_MULT_INDEX = 3;
-	private static final int MAX_HEIGHT_MULT_INDEX = 4;
-	private static final int VERTICALLY_CONNECTED_HOLES_MULT_INDEX = 5;
+	public static final int NUM_PARAMETERS = 6;
+	public static final int ROWS_CLEARED_MULT_INDEX = 0;
+	public static final int GLITCH_COUNT_MULT_INDEX = 1;
+	public static final int BUMPINESS_MULT_INDEX = 2;
+	public static final int TOTAL_HEIGHT_MULT_INDEX = 3;
+	public static final int MAX_HEIGHT_MULT_INDEX = 4;
+	public static final int VERTICALLY_CONNECTED_HOLES_MULT_INDEX = 5;
 
 	// Heavily prioritise objective of row clearing. Other Multipliers used for tiebreakers.
 	// initialized to default values
@@ -33,8 +31,56 @@ public class PlayerSkeleton {
 	/********************************* End of multipliers *********************************/
 
 	private static boolean visualMode = false;
+	private static boolean gridMode = false;
 	private static final int DATA_SIZE = 30;
 
+	// Frame rate of visual mode, set with -Dfps=N. The game itself always runs at full speed.
+	private static final int FRAMES_PER_SECOND = Integer.getInteger("fps", 30);
+
+	// Weights used by this player. Copied so that players with different weights can run side by side.
+	private final float[] weights;
+
+	// Source of the contour terms and landing heights, or null to compute them for every move
+	private final ContourCache contours;
+
+	/**
+	 * Creates a player that uses the current {@link #multiplierWeights}.
+	 */
+	public PlayerSkeleton() {
+		this(multiplierWeights);
+	}
+
+	/**
+	 * Creates a player that evaluates moves with {@code weights}, ordered as {@link #multiplierNames}.
+	 */
+	public PlayerSkeleton(float[] weights) {
+		this(weights, null);
+	}
+
+	/**
+	 * Creates a player that reads bumpiness, heights and landing heights from {@code contours} rather than computing
+	 * them for every move. Players may share a cache.
+	 */
+	public PlayerSkeleton(float[] weights, ContourCache contours) {
+		if (weights.length != NUM_PARAMETERS) {
+			throw new IllegalArgumentException("expected " + NUM_PARAMETERS + " weights but got " + weights.length);
+		}
+		this.weights = weights.clone();
+		this.contours = contours;
+	}
+
+	// Names of the weights, in the same order
+	public static String[] getMultiplierNames() {
+		return multiplierNames.clone();
+	}
+
+	/**
+	 * Returns a copy of the weights currently loaded from parameter.txt, or the defaults.
+	 */
+	public static float[] getMultiplierWeights() {
+		return multiplierWeights.clone();
+	}
+
 	//implement this function to have a working system
 	/**
 	 * Picks the move with the highest value.
@@ -58,13 +104,58 @@ public class PlayerSkeleton {
 		return maxIdx;
 	}
 
+	/**
+	 * Returns the value {@link #pickMove} gives a move with {@code features}, as filled by
+	 * {@link #simulateMoveFeatures}, or a null {@code features} for a move that ends the game.
+	 */
+	public float getValue(float[] features) {
+		if (features == null) {
+			return Integer.MIN_VALUE;
+		}
+		return value(features[BUMPINESS_MULT_INDEX], features[TOTAL_HEIGHT_MULT_INDEX],
+				features[ROWS_CLEARED_MULT_INDEX], features[MAX_HEIGHT_MULT_INDEX], features[GLITCH_COUNT_MULT_INDEX],
+				features[VERTICALLY_CONNECTED_HOLES_MULT_INDEX]);
+	}
+
+	// The weighted sum of the terms of a move, always added in this order so that every caller rounds alike
+	private float value(float bumpiness, float totalHeight, float rowsCleared, float maxHeight, float glitches,
+			float holes) {
+		return weights[BUMPINESS_MULT_INDEX] * bumpiness
+				+ weights[TOTAL_HEIGHT_MULT_INDEX] * totalHeight
+				+ weights[ROWS_CLEARED_MULT_INDEX] * rowsCleared
+				+ weights[MAX_HEIGHT_MULT_INDEX] * maxHeight
+				+ weights[GLITCH_COUNT_MULT_INDEX] * glitches
+				+ weights[VERTICALLY_CONNECTED_HOLES_MULT_INDEX] * holes;
+	}
+
 	// Simulates a move and returns a float that allows for evaluation. The higher the better.
 	public float simulateMove(State s, int[] move) {
 		SimulatedState ss = new SimulatedState(s);
 		return ss.getMoveValue(move);
 	}
 
+	/**
+	 * Simulates a move and fills {@code features} with the terms of its value, indexed like {@link #multiplierWeights}.
+	 *
+	 * @return false if the move ends the game
+	 */
+	public boolean simulateMoveFeatures(State s, int[] move, float[] features) {
+		SimulatedState ss = new SimulatedState(s);
+		return ss.getMoveFeatures(move[State.ORIENT], move[State.SLOT], features);
+	}
+
 	public static void main(String[] args) {
+		PlayerMetrics.register();
+
+		// An optional turn cap switches to the capped evaluation mode, which never blocks for input
+		if (args.length > 0) {
+			setParameters();
+			printParameters();
+
+			executeCappedDataSet(Integer.parseInt(args[0]), args.length > 1 && args[1].equals("hard"));
+			return;
+		}
+
 		setVisualMode();
 		setParameters();
 		printParameters();
@@ -84,16 +175,18 @@ public class PlayerSkeleton {
 		int sum = 0;
 		int var = 0;
 		int counter = DATA_SIZE; // set to 30 for more accurate sample size
+		State[] grid = gridMode ? visualizeGrid(DATA_SIZE) : null;
 		while(counter-- > 0) {
-			State s = new State();
+			State s;
 
-			if (visualMode) {
+			if (gridMode) {
+				s = grid[counter];
+			} else if (visualMode) {
+				s = new State();
 				visualize(s);
 			} else {
-				PlayerSkeleton p = new PlayerSkeleton();
-				while (!s.hasLost()) {
-					s.makeMove(p.pickMove(s, s.legalMoves()));
-				}
+				s = new State();
+				new GameEvaluator().play(new PlayerSkeleton(), s, GameEvents.UNSEEDED);
 			}
 
 			maxScore = Math.max(maxScore, s.getRowsCleared());
@@ -109,40 +202,100 @@ public class PlayerSkeleton {
 		System.out.println(" Ave: " + (sum / DATA_SIZE) + " Min: " + minScore + " Max: " + maxScore + " Var: " + var);
 	}
 
+	/**
+	 * Executes {@link #DATA_SIZE} seeded games that stop after {@code turnCap} turns, and extrapolates the lines each
+	 * game would have cleared if it had been played out. See {@link GameEvaluator} for how the estimate is made.
+	 *
+	 * @param hard - draw pieces from {@link GameEvaluator#HARD_DISTRIBUTION} so that games end sooner
+	 */
+	private static void executeCappedDataSet(int turnCap, boolean hard) {
+		GameEvaluator evaluator = new GameEvaluator(turnCap, hard ? GameEvaluator.HARD_DISTRIBUTION : null);
+		GameEvaluator.Result result = evaluator.evaluate(multiplierWeights, GameEvaluator.seeds(0, DATA_SIZE));
+
+		System.out.println(result);
+	}
+
 	private static void setVisualMode() {
 		Scanner sc = new Scanner(System.in);
-		System.out.println("Visual Mode? 1 for yes, 0 for no");
-		visualMode = sc.nextInt() == 1;
+		System.out.println("Visual Mode? 1 for yes, 2 for all games at once, 0 for no");
+		int answer = sc.nextInt();
+		visualMode = answer == 1;
+		gridMode = answer == 2;
 		sc.close();
 	}
 
-	private static void visualize(State s) {
+	/**
+	 * Plays the game at full speed on its own thread while a {@link RenderLoop} draws snapshots of it at
+	 * {@link #FRAMES_PER_SECOND}.
+	 */
+	private static void visualize(final State s) {
 		TFrame window = new TFrame(s);
-		PlayerSkeleton p = new PlayerSkeleton();
-
-		while (!s.hasLost()) {
-			s.makeMove(p.pickMove(s, s.legalMoves()));
+		final PlayerSkeleton p = new PlayerSkeleton();
+		final RenderLoop renderer = new RenderLoop(window, FRAMES_PER_SECOND);
+		Thread render = renderer.start();
 
-			if (visualMode) {
-				s.draw();
-				s.drawNext(0, 0);
+		Thread game = new Thread(new Runnable() {
+			public void run() {
+				while (!s.hasLost()) {
+					s.makeMove(p.pickMove(s, s.legalMoves()));
+					renderer.offer(s);
+				}
+				renderer.finish(s);
 			}
+		}, "game");
+		game.start();
 
-			// This creates a delay, making it harder to test multiple tests
-			/*
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			*/
+		try {
+			game.join();
+			render.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
 		}
 		window.dispose();
 	}
 
+	/**
+	 * Plays {@code games} games at once, each on its own thread, shown side by side in one window by a single
+	 * {@link RenderLoop}.
+	 */
+	private static State[] visualizeGrid(int games) {
+		TFrame window = new TFrame(games);
+		final RenderLoop renderer = new RenderLoop(window, FRAMES_PER_SECOND);
+		Thread render = renderer.start();
+
+		final State[] states = new State[games];
+		Thread[] threads = new Thread[games];
+		for (int i = 0; i < games; i++) {
+			final int game = i;
+			states[i] = new State();
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					State s = states[game];
+					PlayerSkeleton p = new PlayerSkeleton();
+					while (!s.hasLost()) {
+						s.makeMove(p.pickMove(s, s.legalMoves()));
+						renderer.offer(game, s);
+					}
+					renderer.finish(game, s);
+				}
+			}, "game-" + i);
+			threads[i].start();
+		}
+
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			render.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		window.dispose();
+		return states;
+	}
 
 	/********************************* Parameter weight optimization *********************************/
-	private static final String PARAM_FILE_NAME = "parameter.txt";
+	static final String PARAM_FILE_NAME = "parameter.txt";
 
 	/**
 	 * Sets parameter multiplierWeights for the current iteration. Parameters stored in parameter.txt in same directory as
@@ -184,24 +337,13 @@ public class PlayerSkeleton {
 
 	/**
 	 * Saves parameter multiplierWeights of the current iteration. Parameters stored in parameter.txt in same directory as
-	 * PlayerSkeleton file.
+	 * PlayerSkeleton file. The file is replaced atomically, so a crash while saving keeps the previous weights.
 	 *
 	 * {@link PlayerSkeleton#setParameters(String[])} for information about how the parameters are set.
 	 */
 	private static void saveParameters() {
 		try {
-			FileWriter fileWriter =  new FileWriter(PARAM_FILE_NAME);
-
-			BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-
-			String line = "" + multiplierWeights[0];
-			for (int i = 1; i < NUM_PARAMETERS; i++) {
-				line += " " + multiplierWeights[i];
-			}
-			line += "\n";
-
-			bufferedWriter.write(line);
-			bufferedWriter.close();
+			ParameterStore.saveWeights(PARAM_FILE_NAME, multiplierWeights);
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
@@ -231,25 +373,14 @@ public class PlayerSkeleton {
 	 */
 	class SimulatedState extends State {
 
-		private int field[][];
-		private int top[];
+		// The board copied by State(State), simulated on directly
+		private final int field[][];
+		private final int top[];
 
 		public SimulatedState (State s) {
-			// initialize field
-			field = new int[s.getField().length][s.getField()[0].length];
-			for (int i = 0; i < field.length; i++) {
-				for (int j = 0; j < field[0].length; j++) {
-					field[i][j] = s.getField()[i][j];
-				}
-			}
-
-			// initialize top
-			top = new int[s.getTop().length];
-			for (int i = 0; i < top.length; i++) {
-				top[i] = s.getTop()[i];
-			}
-
-			nextPiece = s.getNextPiece();
+			super(s);
+			field = getField();
+			top = getTop();
 		}
 
 		// Returns the value of making a move
@@ -258,18 +389,51 @@ public class PlayerSkeleton {
 		}
 
 		public float getMoveValue(int orient, int slot) {
+			int height = landingHeight(orient, slot);
+			if (endsGame(orient, height)) {
+				return Integer.MIN_VALUE;
+			}
+			return place(orient, slot, height, null);
+		}
+
+		/**
+		 * Performs the move and fills {@code features} with the terms its value is made of, indexed like
+		 * {@link #multiplierWeights}.
+		 *
+		 * @return false if the move ends the game, in which case {@code features} is left untouched
+		 */
+		public boolean getMoveFeatures(int orient, int slot, float[] features) {
+			int height = landingHeight(orient, slot);
+			if (endsGame(orient, height)) {
+				return false;
+			}
+			place(orient, slot, height, features);
+			return true;
+		}
+
+		private int landingHeight(int orient, int slot) {
+			if (contours != null) {
+				return ContourCache.base(top) + contours.get(top).landingHeight(nextPiece, orient, slot);
+			}
 			//height if the first column makes contact
 			int height = top[slot]-getpBottom()[nextPiece][orient][0];
 			//for each column beyond the first in the piece
 			for(int c = 1; c < pWidth[nextPiece][orient];c++) {
 				height = Math.max(height,top[slot+c]-State.getpBottom()[nextPiece][orient][c]);
 			}
+			return height;
+		}
 
-			// Check if game ended - penalize heavily.
-			if(height+State.getpHeight()[nextPiece][orient] >= ROWS) {
-				return Integer.MIN_VALUE;
-			}
+		// Check if game ended - penalize heavily.
+		private boolean endsGame(int orient, int height) {
+			return height+State.getpHeight()[nextPiece][orient] >= field.length;
+		}
 
+		/**
+		 * Adds the piece at {@code height} and returns the value of the board it leaves. The terms of the value are
+		 * stored in {@code features} unless it is null, so that picking a move allocates nothing per candidate.
+		 */
+		private float place(int orient, int slot, int height, float[] features) {
 			/********************************* Perform simulation of adding piece *********************************/
 			/********************************* Please ignore this chunk (unless necessary) *********************************/
 			//for each column in the piece - fill in the appropriate blocks
@@ -285,52 +449,44 @@ public class PlayerSkeleton {
 				top[slot+c]=height+State.getpTop()[nextPiece][orient][c];
 			}
 
-			int rowsCleared = 0;
-
-			//check for full rows - starting at the top
-			for(int r = height+State.getpHeight()[nextPiece][orient]-1; r >= height; r--) {
-				//check all columns in the row
-				boolean full = true;
-				for(int c = 0; c < COLS; c++) {
-					if(field[r][c] == 0) {
-						full = false;
-						break;
-					}
-				}
-				//if the row was full - remove it and slide above stuff down
-				if(full) {
-					rowsCleared++;
-					//for each column
-					for(int c = 0; c < COLS; c++) {
-
-						//slide down all bricks
-						for(int i = r; i < top[c]; i++) {
-							field[i][c] = field[i+1][c];
-						}
-						//lower the top
-						top[c]--;
-						while(top[c]>=1 && field[top[c]-1][c]==0)
-							top[c]--;
-					}
-				}
-			}
+			//remove full rows and slide above stuff down
+			int rowsCleared = clearFullRows(field, top, height, State.getpHeight()[nextPiece][orient]);
 			/********************************* End of simulation *********************************/
 
-			int maxHeight = 0;
+			float bumpiness;
+			float totalHeight;
+			float maxHeight;
+			if (contours != null) {
+				ContourCache.Entry contour = contours.get(top);
+				int base = ContourCache.base(top);
+				bumpiness = contour.bumpiness;
+				totalHeight = contour.totalHeight + base * top.length;
+				maxHeight = contour.maxHeight + base;
+			} else {
+				int max = 0;
 
-			for (int i = 0; i < top.length; i++) {
-				if (top[i] > maxHeight) {
-					maxHeight = top[i];
+				for (int i = 0; i < top.length; i++) {
+					if (top[i] > max) {
+						max = top[i];
+					}
 				}
-			}
-
-			return multiplierWeights[BUMPINESS_MULT_INDEX] * getBumpiness(top)
-					+ multiplierWeights[TOTAL_HEIGHT_MULT_INDEX] * getTotalHeight(top)
-					+ multiplierWeights[ROWS_CLEARED_MULT_INDEX] * rowsCleared
-					+ multiplierWeights[MAX_HEIGHT_MULT_INDEX] * maxHeight
-					+ multiplierWeights[GLITCH_COUNT_MULT_INDEX] * getGlitchCount(field, top)
-					+ multiplierWeights[VERTICALLY_CONNECTED_HOLES_MULT_INDEX] * getVerticalHeightHoles(field, top);
 
+				bumpiness = getBumpiness(top);
+				totalHeight = getTotalHeight(top);
+				maxHeight = max;
+			}
+			float glitches = getGlitchCount(field, top);
+			float holes = getVerticalHeightHoles(field, top);
+
+			if (features != null) {
+				features[BUMPINESS_MULT_INDEX] = bumpiness;
+				features[TOTAL_HEIGHT_MULT_INDEX] = totalHeight;
+				features[ROWS_CLEARED_MULT_INDEX] = rowsCleared;
+				features[MAX_HEIGHT_MULT_INDEX] = maxHeight;
+				features[GLITCH_COUNT_MULT_INDEX] = glitches;
+				features[VERTICALLY_CONNECTED_HOLES_MULT_INDEX] = holes;
+			}
+			return value(bumpiness, totalHeight, rowsCleared, maxHeight, glitches, holes);
 		}
 
 		// Checks for how bumpy the top is
@@ -406,7 +562,7 @@ public class PlayerSkeleton {
 			int verticalHoles = 0;
 			int[] curr = new int[top.length];
 
-			for (int c = 0; c < COLS; c++) {
+			for (int c = 0; c < top.length; c++) {
 				while (curr[c] < top[c]) {
 					if (field[curr[c]][c] == 0) {
 						verticalHoles++;
@@ -0,0 +1,136 @@
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Draws games that run on other threads at a fixed frame rate, so that watching a game does not slow it down to
+ * the speed of Swing painting.
+ *
+ * Once per frame the render thread asks each game for a snapshot. A game thread calls {@link #offer(int, State)}
+ * after every move, which costs a single volatile read unless a snapshot was asked for, in which case it copies the
+ * board. The render thread then draws the copies into the {@link TFrame} while the games carry on, and shows them
+ * all at once. Moves made between two frames are never drawn. A frame in {@link TFrame#GRID} mode shows every game
+ * in its own cell with its score; any other frame shows game 0.
+ */
+public class RenderLoop implements Runnable {
+
+	// Hand-off between one game thread and the render thread
+	private static class Game {
+		volatile boolean snapshotRequested = true;
+		volatile boolean finished;
+		final AtomicReference<State> latest = new AtomicReference<State>();
+	}
+
+	private final TFrame frame;
+	private final long frameNanos;
+	private final Game[] games;
+
+	/**
+	 * @param framesPerSecond - frame rate to draw at, lowered to the refresh rate of the display if that is lower
+	 */
+	public RenderLoop(TFrame frame, int framesPerSecond) {
+		this.frame = frame;
+		this.frameNanos = 1000000000L / Math.max(1, Math.min(framesPerSecond, displayRefreshRate()));
+		this.games = new Game[frame.games];
+		for (int i = 0; i < games.length; i++) {
+			games[i] = new Game();
+		}
+	}
+
+	// Refresh rate of the default screen, or Integer.MAX_VALUE if it is not known
+	private static int displayRefreshRate() {
+		try {
+			DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+					.getDisplayMode();
+			if (mode.getRefreshRate() != DisplayMode.REFRESH_RATE_UNKNOWN) {
+				return mode.getRefreshRate();
+			}
+		} catch (HeadlessException e) {
+			// no display to throttle to
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Starts drawing on a new daemon thread.
+	 */
+	public Thread start() {
+		Thread thread = new Thread(this, "render-loop");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Called by the game thread after every move.
+	 */
+	public void offer(State s) {
+		offer(0, s);
+	}
+
+	public void offer(int game, State s) {
+		Game g = games[game];
+		if (g.snapshotRequested) {
+			g.snapshotRequested = false;
+			g.latest.set(new State(s));
+		}
+	}
+
+	/**
+	 * Called by the game thread once the game is over, so that the final board is always drawn.
+	 */
+	public void finish(State s) {
+		finish(0, s);
+	}
+
+	public void finish(int game, State s) {
+		Game g = games[game];
+		g.latest.set(new State(s));
+		g.finished = true;
+	}
+
+	public void run() {
+		long nextFrame = System.nanoTime();
+		while (true) {
+			boolean last = true;
+			frame.label.beginBatch();
+			for (int i = 0; i < games.length; i++) {
+				Game g = games[i];
+				boolean finished = g.finished;
+				last &= finished;
+				State snapshot = g.latest.getAndSet(null);
+				if (snapshot != null) {
+					if (frame.mode == TFrame.GRID) {
+						frame.selectCell(i, snapshot);
+					}
+					frame.view.draw(snapshot);
+					frame.view.drawNext(snapshot, 0, 0);
+					if (frame.mode == TFrame.GRID) {
+						frame.drawScore(i, snapshot);
+					}
+				}
+				if (!finished) {
+					g.snapshotRequested = true;
+				}
+			}
+			frame.label.endBatch();
+			if (last) {
+				return;
+			}
+
+			nextFrame += frameNanos;
+			long sleep = nextFrame - System.nanoTime();
+			if (sleep > 0) {
+				try {
+					Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+				} catch (InterruptedException e) {
+					return;
+				}
+			} else {
+				// Drawing took longer than a frame, start the next one from now
+				nextFrame = System.nanoTime();
+			}
+		}
+	}
+}
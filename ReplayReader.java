@@ -0,0 +1,174 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a replay written by {@link ReplayRecorder} one move at a time, so games of any length can be replayed without
+ * holding them in memory.
+ *
+ * Usage: java ReplayReader file [delay in ms between moves, or -1 to replay without a window]
+ */
+public class ReplayReader implements Closeable {
+
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private final DataInputStream in;
+	private final long seed;
+	private final float[] weights;
+	private final int rows;
+	private final int cols;
+	private final int moveBits;
+
+	private long bits;
+	private int bitCount;
+	private int piece;
+	private int move;
+
+	public ReplayReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_BYTES));
+		if (this.in.readInt() != ReplayRecorder.MAGIC) {
+			throw new IOException("not a replay file");
+		}
+		int version = this.in.readUnsignedByte();
+		if (version != 1 && version != ReplayRecorder.VERSION) {
+			throw new IOException("unsupported replay version " + version);
+		}
+
+		seed = this.in.readLong();
+		weights = new float[this.in.readUnsignedByte()];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = this.in.readFloat();
+		}
+		if (version == 1) {
+			rows = State.ROWS;
+			cols = State.COLS;
+			moveBits = ReplayRecorder.MOVE_BITS;
+		} else {
+			rows = this.in.readUnsignedShort();
+			cols = this.in.readUnsignedShort();
+			moveBits = ReplayRecorder.moveBits(cols);
+		}
+	}
+
+	public ReplayReader(String fileName) throws IOException {
+		this(new FileInputStream(fileName));
+	}
+
+	// Seed the game was created from, or GameEvents.UNSEEDED
+	public long getSeed() {
+		return seed;
+	}
+
+	public float[] getWeights() {
+		return weights.clone();
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Reads the next move.
+	 *
+	 * @return false once the end of the game is reached
+	 */
+	public boolean next() throws IOException {
+		int recordBits = ReplayRecorder.PIECE_BITS + moveBits;
+		while (bitCount < recordBits) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("replay ends without an end marker");
+			}
+			bits = (bits << 8) | b;
+			bitCount += 8;
+		}
+
+		bitCount -= recordBits;
+		int record = (int) (bits >>> bitCount) & ((1 << recordBits) - 1);
+		piece = record >>> moveBits;
+		move = record & ((1 << moveBits) - 1);
+		return piece != ReplayRecorder.END_PIECE;
+	}
+
+	// Piece placed by the current move
+	public int getPiece() {
+		return piece;
+	}
+
+	// Index of the current move in legalMoves of its piece
+	public int getMove() {
+		return move;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * State whose next piece is taken from the replay rather than drawn at random.
+	 */
+	static class ReplayState extends State {
+		ReplayState() {
+			this(State.ROWS, State.COLS);
+		}
+
+		// The seed only draws a first piece, which the replay replaces
+		ReplayState(int rows, int cols) {
+			super(0, null, rows, cols);
+		}
+
+		void setNextPiece(int piece) {
+			nextPiece = piece;
+		}
+	}
+
+	/**
+	 * Applies the next move of the replay to {@code s}.
+	 *
+	 * @return false once the end of the game is reached
+	 */
+	public boolean playNext(ReplayState s) throws IOException {
+		if (!next()) {
+			return false;
+		}
+		s.setNextPiece(piece);
+		s.makeMove(move);
+		return true;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		ReplayReader reader = new ReplayReader(args[0]);
+		int delay = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		ReplayState s = new ReplayState(reader.getRows(), reader.getCols());
+
+		System.out.println("Seed " + reader.getSeed() + ", weights " + ParameterStore.formatWeights(reader.getWeights()));
+		try {
+			if (delay < 0) {
+				while (reader.playNext(s)) {
+				}
+			} else {
+				TFrame window = new TFrame(s);
+				while (reader.playNext(s)) {
+					window.view.draw(s);
+					window.view.drawNext(s, 0, 0);
+					if (delay > 0) {
+						Thread.sleep(delay);
+					}
+				}
+				window.dispose();
+			}
+		} finally {
+			reader.close();
+		}
+
+		System.out.println("Replayed " + s.getTurnNumber() + " moves, " + s.getRowsCleared() + " rows");
+	}
+}
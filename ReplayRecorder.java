@@ -0,0 +1,143 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams a game to a compact binary replay as it is played.
+ *
+ * The header holds the seed, the weights of the player and the board size. Each move after that takes 3 bits for the
+ * piece id and as many bits as the index of a move in {@code legalMoves} needs on a board that wide, 6 on the standard
+ * board, for 9 bits per move. Records are packed into a buffered stream, so recording a move is a
+ * couple of shifts and, once every 64 KB, one write. The replay ends with a record whose piece id is 7, which no real
+ * piece has. {@link ReplayReader} reads it back.
+ *
+ * Usage: java ReplayRecorder file [seed] [turn cap]
+ */
+public class ReplayRecorder implements Closeable {
+
+	static final int MAGIC = 0x54524c59; // "TRLY"
+	static final int VERSION = 2;
+	static final int PIECE_BITS = 3;
+	// Move bits of version 1 replays, which were always of the standard board
+	static final int MOVE_BITS = 6;
+	static final int END_PIECE = 7;
+
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private final DataOutputStream out;
+	private final int moveBits;
+
+	// Bits waiting to be written, right aligned
+	private long bits;
+	private int bitCount;
+	private long moves;
+
+	public ReplayRecorder(OutputStream out, long seed, float[] weights) throws IOException {
+		this(out, seed, weights, State.ROWS, State.COLS);
+	}
+
+	/**
+	 * Records a game on a board of {@code rows} by {@code cols}.
+	 */
+	public ReplayRecorder(OutputStream out, long seed, float[] weights, int rows, int cols) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_BYTES));
+		this.moveBits = moveBits(cols);
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(VERSION);
+		this.out.writeLong(seed);
+		this.out.writeByte(weights.length);
+		for (float weight : weights) {
+			this.out.writeFloat(weight);
+		}
+		this.out.writeShort(rows);
+		this.out.writeShort(cols);
+	}
+
+	public ReplayRecorder(String fileName, long seed, float[] weights) throws IOException {
+		this(new FileOutputStream(fileName), seed, weights);
+	}
+
+	/**
+	 * Bits needed for the index of any move in {@code legalMoves} on a board {@code cols} wide.
+	 */
+	static int moveBits(int cols) {
+		int most = 0;
+		for (int piece = 0; piece < State.N_PIECES; piece++) {
+			int moves = 0;
+			for (int width : State.getpWidth()[piece]) {
+				moves += cols + 1 - width;
+			}
+			most = Math.max(most, moves);
+		}
+		return 32 - Integer.numberOfLeadingZeros(most - 1);
+	}
+
+	/**
+	 * Records that {@code piece} was placed with move {@code move}, its index in {@code legalMoves}.
+	 */
+	public void record(int piece, int move) throws IOException {
+		write(piece, move);
+		moves++;
+	}
+
+	public long getMoves() {
+		return moves;
+	}
+
+	private void write(int piece, int move) throws IOException {
+		if (piece < 0 || piece > END_PIECE || move < 0 || move >= 1 << moveBits) {
+			throw new IllegalArgumentException("piece " + piece + ", move " + move + " does not fit in a record");
+		}
+		bits = (bits << (PIECE_BITS + moveBits)) | (piece << moveBits) | move;
+		bitCount += PIECE_BITS + moveBits;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			out.write((int) (bits >>> bitCount));
+		}
+	}
+
+	/**
+	 * Writes the end marker, pads the last byte and closes the stream.
+	 */
+	public void close() throws IOException {
+		write(END_PIECE, 0);
+		if (bitCount > 0) {
+			out.write((int) (bits << (8 - bitCount)));
+			bitCount = 0;
+		}
+		out.close();
+	}
+
+	/**
+	 * Plays a seeded game with the weights in parameter.txt and records it.
+	 */
+	public static void main(String[] args) throws IOException {
+		String fileName = args[0];
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		int turnCap = args.length > 2 ? Integer.parseInt(args[2]) : GameEvaluator.NO_CAP;
+
+		float[] weights = ParameterStore.readWeights(PlayerSkeleton.PARAM_FILE_NAME);
+		if (weights == null) {
+			weights = PlayerSkeleton.getMultiplierWeights();
+		}
+
+		PlayerSkeleton p = new PlayerSkeleton(weights);
+		State s = new State(seed);
+		ReplayRecorder recorder = new ReplayRecorder(fileName, seed, weights);
+		try {
+			while (!s.hasLost() && s.getTurnNumber() < turnCap) {
+				int move = p.pickMove(s, s.legalMoves());
+				recorder.record(s.getNextPiece(), move);
+				s.makeMove(move);
+			}
+		} finally {
+			recorder.close();
+		}
+
+		System.out.println("Recorded " + recorder.getMoves() + " moves, " + s.getRowsCleared() + " rows to "
+				+ fileName);
+	}
+}
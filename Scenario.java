@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A starting board and a piece distribution for the situations seeded games from an empty board rarely reach: tall
+ * stacks, boards full of holes, and floods of S and Z pieces.
+ *
+ * Hand-authored scenarios give their board as a pattern, one string per row from the top row down, '#' for a filled
+ * cell and '.' for an empty one. Rows the pattern leaves out are empty. Generated scenarios draw their board from the
+ * game's seed, so every seed plays a different board and the same seed always plays the same one. Either way
+ * {@link #newGame(long)} returns a State on its first turn, ready to play with any player or tool that takes a State.
+ *
+ * Usage: java Scenario [games=20] [turnCap=2000] [name...] plays the weights in parameter.txt on every scenario, or the
+ * named ones, and prints the share of games survived, the rows cleared and the per-move latency, worst case included.
+ */
+public class Scenario {
+
+	// Value of the cells that were on the board before the first move, which State numbers from 1
+	public static final int PLACED = -1;
+
+	// Ways of drawing a board from a seed
+	public static final int NONE = 0;
+	public static final int STACK = 1;
+	public static final int HOLES = 2;
+
+	// Piece distributions, ids as in State: O, I, L, J, T, S, Z
+	public static final double[] S_Z_FLOOD = {0, 0, 0, 0, 0, 1, 1};
+	public static final double[] NO_LONG_BAR = {1, 0, 1, 1, 1, 1, 1};
+
+	private static final List<Scenario> LIBRARY = Collections.unmodifiableList(Arrays.asList(
+			new Scenario("empty", "empty board, uniform pieces, as a baseline", null),
+			new Scenario("s-z-flood", "empty board, only S and Z pieces", S_Z_FLOOD),
+			new Scenario("hard", "empty board, S and Z pieces 2.5 times as likely", GameEvaluator.HARD_DISTRIBUTION),
+			new Scenario("tall-stack", "15 rows with one gap each, mostly lined up", null, STACK, 15, 1),
+			new Scenario("near-top", "17 rows with one gap each, S and Z pieces 2.5 times as likely",
+					GameEvaluator.HARD_DISTRIBUTION, STACK, 17, 1),
+			new Scenario("swiss-cheese", "10 rows with 3 scattered gaps each, most of them covered", null, HOLES, 10, 3),
+			new Scenario("deep-holes", "14 rows with 2 scattered gaps each, S and Z only", S_Z_FLOOD, HOLES, 14, 2),
+			new Scenario("well-no-bar", "12-row well on the right that only a long bar clears, and no long bars",
+					NO_LONG_BAR,
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########.",
+					"#########."),
+			new Scenario("staircase", "steps one cell high, which S and Z pieces cannot lie flat on", S_Z_FLOOD,
+					"#.........",
+					"##........",
+					"###.......",
+					"####......",
+					"#####.....",
+					"######....",
+					"#######...",
+					"########..",
+					"#########."),
+			new Scenario("overhangs", "ledges covering empty cells, uniform pieces", null,
+					"###...####",
+					"#.#...#..#",
+					"#.##.##..#",
+					"#....#...#",
+					"##.###.###",
+					"#...#....#",
+					"###.##.###",
+					".#########")));
+
+	private final String name;
+	private final String description;
+	private final double[] distribution;
+
+	// Top row first, or null for a generated board
+	private final String[] pattern;
+
+	private final int generator;
+	private final int height;
+	private final int gaps;
+
+	/**
+	 * Scenario starting from the board in {@code pattern}, top row first.
+	 *
+	 * @param distribution - relative likelihood of each piece, or null for the standard uniform game
+	 */
+	public Scenario(String name, String description, double[] distribution, String... pattern) {
+		if (pattern.length >= State.ROWS) {
+			throw new IllegalArgumentException(name + ": pattern has " + pattern.length + " rows, at most "
+					+ (State.ROWS - 1) + " fit");
+		}
+		for (String row : pattern) {
+			if (row.length() != State.COLS || !row.matches("[#.]*") || row.indexOf('.') < 0) {
+				throw new IllegalArgumentException(name + ": rows need " + State.COLS + " cells of '#' or '.', at least"
+						+ " one empty: " + row);
+			}
+		}
+		this.name = name;
+		this.description = description;
+		this.distribution = distribution;
+		this.pattern = pattern.clone();
+		this.generator = NONE;
+		this.height = pattern.length;
+		this.gaps = 0;
+	}
+
+	/**
+	 * Scenario whose board {@code generator} draws from every game's seed: {@code height} rows, each with
+	 * {@code gaps} empty cells.
+	 */
+	public Scenario(String name, String description, double[] distribution, int generator, int height, int gaps) {
+		if (generator != STACK && generator != HOLES) {
+			throw new IllegalArgumentException(name + ": unknown generator " + generator);
+		}
+		if (height < 0 || height >= State.ROWS || gaps < 1 || gaps >= State.COLS) {
+			throw new IllegalArgumentException(name + ": cannot generate " + height + " rows with " + gaps + " gaps");
+		}
+		this.name = name;
+		this.description = description;
+		this.distribution = distribution;
+		this.pattern = null;
+		this.generator = generator;
+		this.height = height;
+		this.gaps = gaps;
+	}
+
+	// Every built-in scenario, in the order they are reported
+	public static List<Scenario> library() {
+		return LIBRARY;
+	}
+
+	public static Scenario get(String name) {
+		StringBuilder names = new StringBuilder();
+		for (Scenario scenario : LIBRARY) {
+			if (scenario.name.equals(name)) {
+				return scenario;
+			}
+			names.append(names.length() == 0 ? "" : ", ").append(scenario.name);
+		}
+		throw new IllegalArgumentException("unknown scenario " + name + ", one of " + names);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public double[] getDistribution() {
+		return distribution;
+	}
+
+	/**
+	 * The board as defined: the pattern's rows joined by '/', or the generator with its height and gaps. Two scenarios
+	 * with the same definition start from the same boards.
+	 */
+	public String getBoardDefinition() {
+		if (pattern != null) {
+			StringBuilder rows = new StringBuilder();
+			for (String row : pattern) {
+				rows.append(rows.length() == 0 ? "" : "/").append(row);
+			}
+			return rows.toString();
+		}
+		return (generator == STACK ? "stack " : "holes ") + height + " rows " + gaps + " gaps";
+	}
+
+	/**
+	 * Creates the game of {@code seed}: its pieces are drawn from the scenario's distribution as in
+	 * {@link State#State(long, double[])}, on the scenario's board.
+	 */
+	public State newGame(long seed) {
+		State s = new State(seed, distribution);
+		int[][] field = s.getField();
+		if (pattern != null) {
+			for (int i = 0; i < pattern.length; i++) {
+				int r = pattern.length - 1 - i;
+				for (int c = 0; c < State.COLS; c++) {
+					field[r][c] = pattern[i].charAt(c) == '#' ? PLACED : 0;
+				}
+			}
+		} else {
+			generate(field, new Random(~seed));
+		}
+
+		int[] top = s.getTop();
+		for (int c = 0; c < State.COLS; c++) {
+			top[c] = 0;
+			for (int r = 0; r < height; r++) {
+				if (field[r][c] != 0) {
+					top[c] = r + 1;
+				}
+			}
+		}
+		return s;
+	}
+
+	private void generate(int[][] field, Random random) {
+		int[] previous = null;
+		for (int r = 0; r < height; r++) {
+			Arrays.fill(field[r], PLACED);
+			int[] open;
+			if (generator == STACK && previous != null && random.nextInt(10) < 7) {
+				// Keep the gap of the row below most of the time, so gaps line up into wells as in real stacks
+				open = previous;
+			} else {
+				open = new int[gaps];
+				int[] columns = shuffledColumns(random);
+				System.arraycopy(columns, 0, open, 0, gaps);
+			}
+			for (int c : open) {
+				field[r][c] = 0;
+			}
+			previous = open;
+		}
+	}
+
+	private static int[] shuffledColumns(Random random) {
+		int[] columns = new int[State.COLS];
+		for (int c = 0; c < columns.length; c++) {
+			columns[c] = c;
+		}
+		for (int c = columns.length - 1; c > 0; c--) {
+			int other = random.nextInt(c + 1);
+			int swap = columns[c];
+			columns[c] = columns[other];
+			columns[other] = swap;
+		}
+		return columns;
+	}
+
+	/**
+	 * Plays {@code games} seeded games of {@code scenario}, one after another so that moves are timed without
+	 * competing threads, and returns a line of how the player survived and how long its decisions took.
+	 */
+	static String report(Scenario scenario, PlayerSkeleton p, int games, int turnCap) {
+		GameEvaluator.Result result = new GameEvaluator.Result();
+		long[] nanos = new long[16];
+		int moves = 0;
+		for (long seed = 0; seed < games; seed++) {
+			State s = scenario.newGame(seed);
+			while (!s.hasLost() && s.getTurnNumber() < turnCap) {
+				long start = System.nanoTime();
+				int move = p.pickMove(s, s.legalMoves());
+				if (moves == nanos.length) {
+					nanos = Arrays.copyOf(nanos, moves * 2);
+				}
+				nanos[moves++] = System.nanoTime() - start;
+				s.makeMove(move);
+			}
+			result.add(s);
+		}
+
+		Arrays.sort(nanos, 0, moves);
+		return String.format("%-14s %9.0f%% %10.1f %10.1f %10.1f %10.1f %10.1f", scenario.name,
+				100.0 * (result.getGames() - result.getLost()) / result.getGames(),
+				(double) result.getTurns() / result.getGames(), result.getMeanRows(),
+				percentile(nanos, moves, 0.5) / 1e3, percentile(nanos, moves, 0.99) / 1e3,
+				moves == 0 ? 0 : nanos[moves - 1] / 1e3);
+	}
+
+	private static long percentile(long[] sorted, int count, double fraction) {
+		return count == 0 ? 0 : sorted[Math.min(count - 1, (int) (fraction * count))];
+	}
+
+	public static void main(String[] args) throws IOException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		int turnCap = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		List<Scenario> scenarios = new ArrayList<Scenario>();
+		for (int i = 2; i < args.length; i++) {
+			scenarios.add(get(args[i]));
+		}
+		if (scenarios.isEmpty()) {
+			scenarios.addAll(LIBRARY);
+		}
+
+		float[] weights = ParameterStore.readWeights(PlayerSkeleton.PARAM_FILE_NAME);
+		PlayerSkeleton p = weights == null ? new PlayerSkeleton() : new PlayerSkeleton(weights);
+		// Warm up the player so that the worst cases measured are not the compiler's
+		report(get("empty"), p, games, turnCap);
+
+		System.out.println(games + " games per scenario, capped at " + turnCap + " turns");
+		System.out.println(String.format("%-14s %10s %10s %10s %10s %10s %10s", "scenario", "survived", "turns",
+				"rows", "p50 us", "p99 us", "max us"));
+		for (Scenario scenario : scenarios) {
+			System.out.println(report(scenario, p, games, turnCap));
+		}
+	}
+}
@@ -0,0 +1,571 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the best moves for a known sequence of pieces by trying every placement of every piece, as an upper bound on
+ * what {@link PlayerSkeleton#pickMove(State, int[][])} can achieve with the same pieces.
+ *
+ * The search works on bitboards, one long per row, and reads landing heights from a {@link ContourCache} shared by
+ * all nodes. Boards reached by different moves are searched once: a bounded table remembers the value of every board
+ * with at least {@link #MEMO_MIN_REMAINING} pieces left. The first {@link #PARALLEL_DEPTH} levels fork a task per
+ * move on a ForkJoin pool, deeper levels run on the thread that reached them.
+ *
+ * Objectives, for the pieces of the sequence only:
+ *   MAX_ROWS       - most rows cleared, ties broken by the evaluation of the final board
+ *   MAX_EVALUATION - highest evaluation, the player's weighted sum of the final board's features with the rows
+ *                    cleared over the whole sequence in place of the rows cleared by the last move
+ *
+ * Usage: java SequenceSolver [pieces=5] [positions=10] [objective=rows|evaluation] compares the default player with
+ * the solver on mid-game boards.
+ */
+public class SequenceSolver {
+
+	public static final int MAX_ROWS = 0;
+	public static final int MAX_EVALUATION = 1;
+
+	// Levels of the search that fork a task per move
+	public static final int PARALLEL_DEPTH = 2;
+
+	// Boards with fewer pieces left than this are cheaper to search again than to look up
+	public static final int MEMO_MIN_REMAINING = 3;
+
+	public static final int DEFAULT_MEMO_CAPACITY = 1 << 20;
+
+	// Weight of a cleared row under MAX_ROWS, far above any difference in evaluation
+	private static final double ROW_VALUE = 1e6;
+
+	private final float[] weights;
+	private final int objective;
+	private final ForkJoinPool pool;
+	private final int memoCapacity;
+
+	// Value of one cleared row
+	private final double rowValue;
+
+	public SequenceSolver(float[] weights, int objective) {
+		this(weights, objective, ForkJoinPool.commonPool(), DEFAULT_MEMO_CAPACITY);
+	}
+
+	public SequenceSolver(float[] weights, int objective, ForkJoinPool pool, int memoCapacity) {
+		if (weights.length != PlayerSkeleton.NUM_PARAMETERS) {
+			throw new IllegalArgumentException("expected " + PlayerSkeleton.NUM_PARAMETERS + " weights but got "
+					+ weights.length);
+		}
+		if (objective != MAX_ROWS && objective != MAX_EVALUATION) {
+			throw new IllegalArgumentException("unknown objective " + objective);
+		}
+		this.weights = weights.clone();
+		this.objective = objective;
+		this.pool = pool;
+		this.memoCapacity = Integer.highestOneBit(Math.max(memoCapacity - 1, 1)) << 1;
+		this.rowValue = objective == MAX_ROWS ? ROW_VALUE : weights[PlayerSkeleton.ROWS_CLEARED_MULT_INDEX];
+	}
+
+	/**
+	 * Best moves found for a sequence.
+	 */
+	public static class Solution {
+		// {orient, slot} of each piece, as taken by State.makeMove(int[]); null if every sequence of moves loses
+		public final int[][] moves;
+		public final int rowsCleared;
+		// Objective value reached, -infinity if every sequence of moves loses
+		public final double value;
+		// Boards searched, and answered from the memo table
+		public final long nodes;
+		public final long memoHits;
+
+		Solution(int[][] moves, int rowsCleared, double value, Search search) {
+			this.moves = moves;
+			this.rowsCleared = rowsCleared;
+			this.value = value;
+			this.nodes = search.nodes.sum();
+			this.memoHits = search.memoHits.sum();
+		}
+
+		public boolean isLost() {
+			return moves == null;
+		}
+	}
+
+	/**
+	 * Solves the sequence {@code pieces} from {@code s}. The first piece must be the next piece of {@code s}.
+	 */
+	public Solution solve(State s, int[] pieces) {
+		if (pieces.length == 0 || pieces[0] != s.getNextPiece()) {
+			throw new IllegalArgumentException("the sequence must start with the next piece of the state");
+		}
+		if (s.getCols() > 64) {
+			throw new IllegalArgumentException("boards wider than 64 columns are not supported: " + s.getCols());
+		}
+
+		long[] board = bitboard(s);
+		Search search = new Search(pieces.clone(), s.getRows(), s.getCols());
+		int[] top = s.getTop().clone();
+
+		double value = pool.invoke(search.new Task(board, top, 0));
+		if (value == Double.NEGATIVE_INFINITY) {
+			return new Solution(null, 0, value, search);
+		}
+
+		// Walk down the best line; values below the root come from the memo table or small searches
+		int[][] moves = new int[pieces.length][];
+		int rowsCleared = 0;
+		for (int depth = 0; depth < pieces.length; depth++) {
+			long[] bestBoard = null;
+			int[] bestTop = null;
+			double best = Double.NEGATIVE_INFINITY;
+			int bestRows = 0;
+			ContourCache.Entry contour = search.contours.get(top);
+			int base = ContourCache.base(top);
+			for (int orient = 0; orient < State.getpOrients()[pieces[depth]]; orient++) {
+				for (int slot = 0; slot + State.getpWidth()[pieces[depth]][orient] <= s.getCols(); slot++) {
+					long[] childBoard = new long[board.length];
+					int[] childTop = new int[top.length];
+					int rows = search.place(board, top, contour, base, pieces[depth], orient, slot, childBoard,
+							childTop);
+					if (rows < 0) {
+						continue;
+					}
+					double v = rowValue * rows + (depth + 1 == pieces.length
+							? boardValue(childBoard, childTop) : search.search(childBoard, childTop, depth + 1));
+					if (v > best) {
+						best = v;
+						bestRows = rows;
+						moves[depth] = new int[] {orient, slot};
+						bestBoard = childBoard;
+						bestTop = childTop;
+					}
+				}
+			}
+			rowsCleared += bestRows;
+			board = bestBoard;
+			top = bestTop;
+		}
+		return new Solution(moves, rowsCleared, value, search);
+	}
+
+
+	// Value of a board searched at some depth of the sequence
+	private static final class Memo {
+		final long[] board;
+		final int depth;
+		final double value;
+
+		Memo(long[] board, int depth, double value) {
+			this.board = board;
+			this.depth = depth;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * One solve: the sequence, its board size and the tables shared by every thread searching it.
+	 */
+	private final class Search {
+		final int[] pieces;
+		final int rows, cols;
+		final long full;
+		final ContourCache contours;
+		final Memo[] memo = new Memo[memoCapacity];
+		final LongAdder nodes = new LongAdder();
+		final LongAdder memoHits = new LongAdder();
+
+		Search(int[] pieces, int rows, int cols) {
+			this.pieces = pieces;
+			this.rows = rows;
+			this.cols = cols;
+			this.full = cols == 64 ? -1L : (1L << cols) - 1;
+			this.contours = new ContourCache(cols, ContourCache.DEFAULT_CAPACITY);
+		}
+
+		/**
+		 * Forks a task per move on the first levels, and searches sequentially below them.
+		 */
+		final class Task extends RecursiveTask<Double> {
+			private static final long serialVersionUID = 1L;
+
+			final long[] board;
+			final int[] top;
+			final int depth;
+
+			Task(long[] board, int[] top, int depth) {
+				this.board = board;
+				this.top = top;
+				this.depth = depth;
+			}
+
+			@Override
+			protected Double compute() {
+				if (depth >= PARALLEL_DEPTH || pieces.length - depth <= MEMO_MIN_REMAINING) {
+					return search(board, top, depth);
+				}
+				nodes.increment();
+
+				int piece = pieces[depth];
+				Task[] tasks = new Task[State.getpOrients()[piece] * cols];
+				int[] cleared = new int[tasks.length];
+				ContourCache.Entry contour = contours.get(top);
+				int base = ContourCache.base(top);
+				int n = 0;
+				for (int orient = 0; orient < State.getpOrients()[piece]; orient++) {
+					for (int slot = 0; slot + State.getpWidth()[piece][orient] <= cols; slot++) {
+						long[] childBoard = new long[rows];
+						int[] childTop = new int[cols];
+						int rowsCleared = place(board, top, contour, base, piece, orient, slot, childBoard, childTop);
+						if (rowsCleared >= 0) {
+							cleared[n] = rowsCleared;
+							tasks[n++] = new Task(childBoard, childTop, depth + 1);
+						}
+					}
+				}
+				for (int i = 1; i < n; i++) {
+					tasks[i].fork();
+				}
+				double best = Double.NEGATIVE_INFINITY;
+				for (int i = 0; i < n; i++) {
+					double value = i == 0 ? tasks[0].compute() : tasks[i].join();
+					best = Math.max(best, rowValue * cleared[i] + value);
+				}
+				return best;
+			}
+		}
+
+		/**
+		 * Best value reachable from {@code board} with the pieces from {@code depth} on, not counting rows cleared
+		 * before it.
+		 */
+		double search(long[] board, int[] top, int depth) {
+			nodes.increment();
+			int remaining = pieces.length - depth;
+			int index = 0;
+			if (remaining >= MEMO_MIN_REMAINING) {
+				long hash = depth;
+				for (long row : board) {
+					hash = hash * 31 + row;
+				}
+				index = (int) mix(hash) & (memo.length - 1);
+				Memo m = memo[index];
+				if (m != null && m.depth == depth && Arrays.equals(m.board, board)) {
+					memoHits.increment();
+					return m.value;
+				}
+			}
+
+			int piece = pieces[depth];
+			ContourCache.Entry contour = contours.get(top);
+			int base = ContourCache.base(top);
+			if (remaining == 1) {
+				return bestLast(board, top, contour, base, piece);
+			}
+
+			double best = Double.NEGATIVE_INFINITY;
+			for (int orient = 0; orient < State.getpOrients()[piece]; orient++) {
+				for (int slot = 0; slot + State.getpWidth()[piece][orient] <= cols; slot++) {
+					// Children need boards of their own, since the memo table keeps them
+					long[] childBoard = new long[rows];
+					int[] childTop = new int[cols];
+					int rowsCleared = place(board, top, contour, base, piece, orient, slot, childBoard, childTop);
+					if (rowsCleared < 0) {
+						continue;
+					}
+					best = Math.max(best, rowValue * rowsCleared + search(childBoard, childTop, depth + 1));
+				}
+			}
+
+			if (remaining >= MEMO_MIN_REMAINING) {
+				memo[index] = new Memo(board, depth, best);
+			}
+			return best;
+		}
+
+		/**
+		 * Best value of placing the last piece of the sequence. A placement that clears no rows only changes the
+		 * features around the piece, so it is scored from the features of this board without building the new one.
+		 */
+		double bestLast(long[] board, int[] top, ContourCache.Entry contour, int base, int piece) {
+			int[] features = features(board, top);
+			long[] scratchBoard = null;
+			int[] scratchTop = null;
+			double best = Double.NEGATIVE_INFINITY;
+			int placements = 0;
+
+			for (int orient = 0; orient < State.getpOrients()[piece]; orient++) {
+				int[] bottom = State.getpBottom()[piece][orient];
+				int[] pieceTop = State.getpTop()[piece][orient];
+				long[] pieceRows = PIECE_ROWS[piece][orient];
+				int width = bottom.length;
+				for (int slot = 0; slot + width <= cols; slot++) {
+					int height = base + contour.landingHeight(piece, orient, slot);
+					if (height + pieceRows.length >= rows) {
+						continue;
+					}
+					placements++;
+
+					boolean clears = false;
+					for (int j = 0; j < pieceRows.length && !clears; j++) {
+						clears = (board[height + j] | pieceRows[j] << slot) == full;
+					}
+					if (clears) {
+						if (scratchBoard == null) {
+							scratchBoard = new long[rows];
+							scratchTop = new int[cols];
+						}
+						int rowsCleared = place(board, top, contour, base, piece, orient, slot, scratchBoard, scratchTop);
+						best = Math.max(best, rowValue * rowsCleared + boardValue(scratchBoard, scratchTop));
+						continue;
+					}
+
+					int totalHeight = features[TOTAL_HEIGHT], maxHeight = features[MAX_HEIGHT];
+					int bumpiness = features[BUMPINESS], verticalHoles = features[VERTICAL_HOLES];
+					int left = Math.max(slot - 1, 0), right = Math.min(slot + width, cols - 1);
+					for (int c = left; c < right; c++) {
+						bumpiness -= Math.abs(top[c + 1] - top[c]);
+					}
+					for (int i = 0; i < width; i++) {
+						int newTop = height + pieceTop[i];
+						totalHeight += newTop - top[slot + i];
+						maxHeight = Math.max(maxHeight, newTop);
+						// A gap under the piece is a new run of empty cells, since the old top sits on a brick
+						if (height + bottom[i] > top[slot + i]) {
+							verticalHoles++;
+						}
+					}
+					int previous = left < slot ? top[left] : height + pieceTop[0];
+					for (int c = left + 1; c <= right; c++) {
+						int t = c >= slot && c < slot + width ? height + pieceTop[c - slot] : top[c];
+						bumpiness += Math.abs(t - previous);
+						previous = t;
+					}
+					int holes = totalHeight - features[CELLS] - 4;
+					best = Math.max(best, weigh(holes, bumpiness, totalHeight, maxHeight, verticalHoles));
+				}
+			}
+			nodes.add(placements);
+			return best;
+		}
+
+		/**
+		 * Drops {@code piece} on a copy of the board in {@code outBoard} and {@code outTop}, as State.makeMove() would.
+		 * {@code contour} and {@code base} are those of {@code top}.
+		 *
+		 * @return the number of rows cleared, or -1 if the move loses
+		 */
+		int place(long[] board, int[] top, ContourCache.Entry contour, int base, int piece, int orient, int slot,
+				long[] outBoard, int[] outTop) {
+			int height = base + contour.landingHeight(piece, orient, slot);
+			int pieceHeight = State.getpHeight()[piece][orient];
+			if (height + pieceHeight >= rows) {
+				return -1;
+			}
+
+			System.arraycopy(board, 0, outBoard, 0, rows);
+			System.arraycopy(top, 0, outTop, 0, cols);
+			int[] bottom = State.getpBottom()[piece][orient];
+			int[] pieceTop = State.getpTop()[piece][orient];
+			for (int i = 0; i < bottom.length; i++) {
+				long bit = 1L << (slot + i);
+				for (int h = height + bottom[i]; h < height + pieceTop[i]; h++) {
+					outBoard[h] |= bit;
+				}
+				outTop[slot + i] = height + pieceTop[i];
+			}
+
+			int removed = 0;
+			for (int r = height; r < height + pieceHeight; r++) {
+				if (outBoard[r] == full) {
+					removed++;
+				}
+			}
+			if (removed == 0) {
+				return 0;
+			}
+
+			// Rows that stay move down past the removed ones, and the top of every column is found again
+			int to = height;
+			for (int r = height; r < rows; r++) {
+				if (r < height + pieceHeight && outBoard[r] == full) {
+					continue;
+				}
+				outBoard[to++] = outBoard[r];
+			}
+			Arrays.fill(outBoard, to, rows, 0);
+			for (int c = 0; c < cols; c++) {
+				int t = outTop[c] - removed;
+				while (t >= 1 && (outBoard[t - 1] >>> c & 1) == 0) {
+					t--;
+				}
+				outTop[c] = t;
+			}
+			return removed;
+		}
+	}
+
+	// Indices of features()
+	private static final int TOTAL_HEIGHT = 0, MAX_HEIGHT = 1, BUMPINESS = 2, VERTICAL_HOLES = 3, CELLS = 4;
+
+	// Rows of each piece in each orientation as bit masks from the left edge, [piece][orient][row from the bottom]
+	private static final long[][][] PIECE_ROWS = new long[State.N_PIECES][][];
+
+	static {
+		for (int piece = 0; piece < State.N_PIECES; piece++) {
+			PIECE_ROWS[piece] = new long[State.getpOrients()[piece]][];
+			for (int orient = 0; orient < PIECE_ROWS[piece].length; orient++) {
+				int[] bottom = State.getpBottom()[piece][orient];
+				int[] top = State.getpTop()[piece][orient];
+				long[] rows = new long[State.getpHeight()[piece][orient]];
+				for (int i = 0; i < bottom.length; i++) {
+					for (int h = bottom[i]; h < top[i]; h++) {
+						rows[h] |= 1L << i;
+					}
+				}
+				PIECE_ROWS[piece][orient] = rows;
+			}
+		}
+	}
+
+	// Total height, max height, bumpiness, runs of empty cells under the tops and filled cells of a board
+	private static int[] features(long[] board, int[] top) {
+		int[] features = new int[5];
+		for (int c = 0; c < top.length; c++) {
+			features[TOTAL_HEIGHT] += top[c];
+			features[MAX_HEIGHT] = Math.max(features[MAX_HEIGHT], top[c]);
+			if (c > 0) {
+				features[BUMPINESS] += Math.abs(top[c] - top[c - 1]);
+			}
+			// A run of empty cells under the top starts where the cell below is filled or at the floor
+			boolean below = true;
+			for (int r = 0; r < top[c]; r++) {
+				boolean filled = (board[r] >>> c & 1) != 0;
+				if (!filled && below) {
+					features[VERTICAL_HOLES]++;
+				}
+				below = filled;
+			}
+		}
+		for (int r = 0; r < features[MAX_HEIGHT]; r++) {
+			features[CELLS] += Long.bitCount(board[r]);
+		}
+		return features;
+	}
+
+	/**
+	 * Weighted features of a final board, as in PlayerSkeleton.SimulatedState.getMoveValue() without the rows
+	 * cleared term.
+	 */
+	private double boardValue(long[] board, int[] top) {
+		int[] features = features(board, top);
+		return weigh(features[TOTAL_HEIGHT] - features[CELLS], features[BUMPINESS], features[TOTAL_HEIGHT],
+				features[MAX_HEIGHT], features[VERTICAL_HOLES]);
+	}
+
+	private double weigh(int holes, int bumpiness, int totalHeight, int maxHeight, int verticalHoles) {
+		return weights[PlayerSkeleton.GLITCH_COUNT_MULT_INDEX] * holes
+				+ weights[PlayerSkeleton.BUMPINESS_MULT_INDEX] * bumpiness
+				+ weights[PlayerSkeleton.TOTAL_HEIGHT_MULT_INDEX] * totalHeight
+				+ weights[PlayerSkeleton.MAX_HEIGHT_MULT_INDEX] * maxHeight
+				+ weights[PlayerSkeleton.VERTICALLY_CONNECTED_HOLES_MULT_INDEX] * verticalHoles;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Plays {@code pieces} from {@code s} with {@code p}, one greedy move at a time, and returns the board reached, or
+	 * null if the player loses on the way.
+	 */
+	public static State playGreedy(PlayerSkeleton p, State s, int[] pieces) {
+		State game = new State(s);
+		for (int piece : pieces) {
+			game.restore(game.getTurnNumber(), game.getRowsCleared(), false, piece);
+			int[] move = game.legalMoves()[p.pickMove(game, game.legalMoves())];
+			if (!game.makeMove(move[State.ORIENT], move[State.SLOT])) {
+				return null;
+			}
+		}
+		return game;
+	}
+
+	/**
+	 * Objective value of {@code end}, reached from {@code start} by playing a sequence, for comparing players with the
+	 * solver.
+	 */
+	public double value(State start, State end) {
+		return rowValue * (end.getRowsCleared() - start.getRowsCleared()) + boardValue(bitboard(end), end.getTop());
+	}
+
+	// One long per row, bit c set if column c is filled
+	private static long[] bitboard(State s) {
+		int[][] field = s.getField();
+		long[] board = new long[s.getRows()];
+		for (int r = 0; r < board.length; r++) {
+			for (int c = 0; c < s.getCols(); c++) {
+				if (field[r][c] != 0) {
+					board[r] |= 1L << c;
+				}
+			}
+		}
+		return board;
+	}
+
+	public static void main(String[] args) {
+		int k = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int positions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int objective = args.length > 2 && args[2].equals("evaluation") ? MAX_EVALUATION : MAX_ROWS;
+
+		PlayerSkeleton p = new PlayerSkeleton();
+		SequenceSolver solver = new SequenceSolver(PlayerSkeleton.getMultiplierWeights(), objective);
+		State[] boards = PlayerBenchmark.midGameBoards(positions, 42);
+
+		double greedyRows = 0, solverRows = 0, greedyValue = 0, solverValue = 0;
+		long greedyNanos = 0, solverNanos = 0, nodes = 0, memoHits = 0;
+		int greedyLost = 0, compared = 0;
+		for (int i = 0; i < positions; i++) {
+			State s = boards[i];
+			Random random = new Random(i);
+			int[] pieces = new int[k];
+			pieces[0] = s.getNextPiece();
+			for (int j = 1; j < k; j++) {
+				pieces[j] = random.nextInt(State.N_PIECES);
+			}
+
+			long start = System.nanoTime();
+			State greedy = playGreedy(p, s, pieces);
+			greedyNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Solution solution = solver.solve(s, pieces);
+			solverNanos += System.nanoTime() - start;
+			nodes += solution.nodes;
+			memoHits += solution.memoHits;
+
+			if (solution.isLost()) {
+				continue;
+			}
+			compared++;
+			solverRows += solution.rowsCleared;
+			solverValue += solution.value;
+			if (greedy == null) {
+				greedyLost++;
+			} else {
+				greedyRows += greedy.getRowsCleared() - s.getRowsCleared();
+				greedyValue += solver.value(s, greedy);
+			}
+		}
+
+		System.out.println(k + " pieces, " + compared + " positions, objective "
+				+ (objective == MAX_ROWS ? "rows" : "evaluation"));
+		System.out.println(String.format("%-8s %10s %14s %14s", "", "rows", "value", "ms/sequence"));
+		System.out.println(String.format("%-8s %10.2f %14.2f %14.3f", "greedy", greedyRows / compared,
+				greedyValue / Math.max(compared - greedyLost, 1), greedyNanos / 1e6 / positions));
+		System.out.println(String.format("%-8s %10.2f %14.2f %14.3f", "solver", solverRows / compared,
+				solverValue / compared, solverNanos / 1e6 / positions));
+		System.out.println("Greedy lost " + greedyLost + ", solver searched " + nodes + " nodes ("
+				+ (long) (nodes * 1e9 / solverNanos) + "/s), " + memoHits + " memo hits");
+	}
+}
@@ -1,34 +1,52 @@
-import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * State contains Tetris simulation. It keeps track of the state and allows you to make moves.
  * Moves are defined by two numbers: the SLOT (leftmost column of the piece) and the ORIENT (the orientation of the piece).
+ * Drawing a State is left to {@link StateView}, so games never depend on AWT.
  */
 public class State {
+	// Standard board size. Other sizes are given to State(long, double[], int, int).
 	public static final int COLS = 10;
 	public static final int ROWS = 21;
 	public static final int N_PIECES = 7;
 
 	public boolean lost = false;
 
-	public TLabel label;
+	// Size of this board
+	private final int rows;
+	private final int cols;
 
 	// Present turn
 	private int turn = 0;
 	private int cleared = 0;
 
   // 0 means that the square is empty. Non-zero values denote the turn that the square was filled by a piece.
-	private int[][] field = new int[ROWS][COLS];
+	private int[][] field;
 
 	// (top row + 1) of each column. 0 indicates empty top row.
-	private int[] top = new int[COLS];
+	private int[] top;
 
 	// Id number of next piece (Technically the piece you are making the move with)
 	protected int nextPiece;
 
+	// Source of the piece sequence. Null means Math.random() is used, as in an unseeded game.
+	private Random random;
+
+	// Relative likelihood of drawing each piece id. Null means every piece is equally likely.
+	private double[] pieceDistribution;
+
 	/********************************* List of Possible Moves *********************************/
-	// All legal moves - first index is piece id - then a list of 2-length arrays
-	protected static int[][][] legalMoves = new int[N_PIECES][][];
+	// All legal moves on the standard board - first index is piece id - then a list of 2-length arrays
+	protected static int[][][] legalMoves;
+
+	// Legal moves on boards of other widths, by width
+	private static final ConcurrentHashMap<Integer, int[][][]> otherLegalMoves = new ConcurrentHashMap<Integer, int[][][]>();
+
+	// Legal moves of this board's width
+	private final int[][][] moves;
 	
 	// Indices for legalMoves
 	public static final int ORIENT = 0;
@@ -80,14 +98,19 @@ public class State {
 	};
 
 	/********************************* List of all Legal moves *********************************/
-	{
+	static {
+		legalMoves = buildLegalMoves(COLS);
+	}
+
+	private static int[][][] buildLegalMoves(int cols) {
+		int[][][] legalMoves = new int[N_PIECES][][];
 		// For each piece type
 		for(int i = 0; i < N_PIECES; i++) {
 			// Figure out number of legal moves
 			int n = 0;
 			for(int j = 0; j < pOrients[i]; j++) {
 				// Number of locations in this orientation
-				n += COLS + 1 - pWidth[i][j];
+				n += cols + 1 - pWidth[i][j];
 			}
 
 			// Allocate space
@@ -97,14 +120,27 @@ public class State {
 			n = 0;
 			for(int j = 0; j < pOrients[i]; j++) {
 				//for each slot
-				for(int k = 0; k < COLS+1-pWidth[i][j];k++) {
+				for(int k = 0; k < cols+1-pWidth[i][j];k++) {
 					legalMoves[i][n][ORIENT] = j;
 					legalMoves[i][n][SLOT] = k;
 					n++;
 				}
 			}
 		}
-	
+		return legalMoves;
+	}
+
+	// The standard board shares the table built up front; other widths build theirs once
+	private static int[][][] legalMovesFor(int cols) {
+		if (cols == COLS) {
+			return legalMoves;
+		}
+		int[][][] moves = otherLegalMoves.get(cols);
+		if (moves == null) {
+			moves = buildLegalMoves(cols);
+			otherLegalMoves.putIfAbsent(cols, moves);
+		}
+		return moves;
 	}
 	
 	public int[][] getField() {
@@ -136,6 +172,14 @@ public class State {
     }
 
 
+	public int getRows() {
+		return rows;
+	}
+
+	public int getCols() {
+		return cols;
+	}
+
 	public int getNextPiece() {
 		return nextPiece;
 	}
@@ -154,24 +198,114 @@ public class State {
 
 	// Constructor
 	public State() {
+		this(ROWS, COLS);
+		nextPiece = randomPiece();
+	}
+
+	// Empty board, before the first piece is drawn
+	private State(int rows, int cols) {
+		if (rows < 5 || cols < 4) {
+			throw new IllegalArgumentException("board must be at least 5 rows by 4 columns: " + rows + "x" + cols);
+		}
+		this.rows = rows;
+		this.cols = cols;
+		this.field = new int[rows][cols];
+		this.top = new int[cols];
+		this.moves = legalMovesFor(cols);
+	}
+
+	/**
+	 * Creates a game whose piece sequence is fully determined by {@code seed}, so that the same game can be replayed
+	 * with different players.
+	 */
+	public State(long seed) {
+		this(seed, null);
+	}
+
+	/**
+	 * Creates a seeded game whose pieces are drawn from {@code pieceDistribution}, the relative likelihood of each
+	 * piece id. A null distribution draws every piece with equal likelihood.
+	 */
+	public State(long seed, double[] pieceDistribution) {
+		this(seed, pieceDistribution, ROWS, COLS);
+	}
+
+	/**
+	 * Creates a seeded game on a board of {@code rows} by {@code cols}. The piece sequence of a seed does not depend on
+	 * the board size.
+	 */
+	public State(long seed, double[] pieceDistribution, int rows, int cols) {
+		this(rows, cols);
+		if (pieceDistribution != null && pieceDistribution.length != N_PIECES) {
+			throw new IllegalArgumentException("piece distribution needs " + N_PIECES + " weights");
+		}
+		this.random = new Random(seed);
+		this.pieceDistribution = pieceDistribution;
 		nextPiece = randomPiece();
 	}
 
+	/**
+	 * Creates a copy of the board, counters and next piece of {@code s}. After the next piece, the copy draws its own
+	 * unseeded pieces from the same distribution.
+	 */
+	public State(State s) {
+		this(s.rows, s.cols);
+		for (int r = 0; r < rows; r++) {
+			System.arraycopy(s.field[r], 0, field[r], 0, cols);
+		}
+		System.arraycopy(s.top, 0, top, 0, cols);
+		turn = s.turn;
+		cleared = s.cleared;
+		lost = s.lost;
+		nextPiece = s.nextPiece;
+		pieceDistribution = s.pieceDistribution;
+	}
+
+	/**
+	 * Sets the counters and next piece of a board that was filled in through getField() and getTop(), e.g. by
+	 * {@link BoardArena#copyTo(int, State)}.
+	 */
+	void restore(int turn, int cleared, boolean lost, int nextPiece) {
+		this.turn = turn;
+		this.cleared = cleared;
+		this.lost = lost;
+		this.nextPiece = nextPiece;
+	}
+
 	/********************************* Simulation methods *********************************/
 
 	// Random integer, returns 0-6
 	private int randomPiece() {
-		return (int)(Math.random() * N_PIECES);
+		double r = random == null ? Math.random() : random.nextDouble();
+		if (pieceDistribution == null) {
+			return (int)(r * N_PIECES);
+		}
+
+		double total = 0;
+		for (int i = 0; i < N_PIECES; i++) {
+			total += pieceDistribution[i];
+		}
+
+		// Walk the cumulative distribution until it passes r
+		double cumulative = 0;
+		r *= total;
+		for (int i = 0; i < N_PIECES - 1; i++) {
+			cumulative += pieceDistribution[i];
+			if (r < cumulative) {
+				return i;
+			}
+		}
+		return N_PIECES - 1;
 	}
 	
 	// Gives legal moves for
 	public int[][] legalMoves() {
-		return legalMoves[nextPiece];
+		return moves[nextPiece];
 	}
 	
 	// Make a move based on the move index - its order in the legalMoves list
 	public void makeMove(int move) {
-		makeMove(legalMoves[nextPiece][move]);
+		makeMove(moves[nextPiece][move]);
 	}
 	
 	// Make a move based on an array of orient and slot
@@ -200,7 +334,7 @@ public class State {
 		}
 
 		// Check if game ended (i.e. sum of piece + prev height reaches top of board)
-		if(height + pHeight[nextPiece][orient] >= ROWS) {
+		if(height + pHeight[nextPiece][orient] >= rows) {
 			lost = true;
 			return false;
 		}
@@ -218,37 +352,8 @@ public class State {
 			top[slot+c] = height + pTop[nextPiece][orient][c];
 		}
 
-		// initial number of rows cleared - incremented as clearing happens
-		int rowsCleared = 0;
-		
-		// Check for full rows - starting at the top
-		for(int r = height + pHeight[nextPiece][orient] - 1; r >= height; r--) {
-			//check all columns in the row
-			boolean full = true;
-			for(int c = 0; c < COLS; c++) {
-				if (field[r][c] == 0) {
-					full = false;
-					break;
-				}
-			}
-
-			//if the row was full - remove it and slide above stuff down
-			if (full) {
-				rowsCleared++;
-				cleared++;
-				//for each column
-				for(int c = 0; c < COLS; c++) {
-
-					//slide down all bricks
-					for(int i = r; i < top[c]; i++) {
-						field[i][c] = field[i+1][c];
-					}
-					//lower the top
-					top[c]--;
-					while(top[c]>=1 && field[top[c]-1][c]==0)	top[c]--;
-				}
-			}
-		}
+		// Remove full rows and slide above stuff down
+		cleared += clearFullRows(field, top, height, pHeight[nextPiece][orient]);
 
 		//pick a new piece
 		nextPiece = randomPiece();
@@ -256,68 +361,52 @@ public class State {
 		return true;
 	}
 
-	/********************************* GUI for simulation *********************************/
 	/**
-	 * Draws the board
+	 * Removes the full rows among the {@code rows} rows from {@code bottom} up, the only rows a piece just placed there
+	 * can have completed, and returns how many were removed.
+	 *
+	 * The field is an array of row references, so rather than sliding every cell above a full row down, the rows
+	 * that stay are moved down by swapping references, in one pass however many rows are removed. The removed rows end
+	 * up above them, where they are zeroed and reused as the new empty rows. {@code top} is lowered in the same step.
 	 */
-	public void draw() {
-		label.clear();
-		label.setPenRadius();
-		//outline board
-		label.line(0, 0, 0, ROWS+5);
-		label.line(COLS, 0, COLS, ROWS+5);
-		label.line(0, 0, COLS, 0);
-		label.line(0, ROWS-1, COLS, ROWS-1);
-		
-		//show bricks
-				
-		for(int c = 0; c < COLS; c++) {
-			for(int r = 0; r < top[c]; r++) {
-				if(field[r][c] != 0) {
-					drawBrick(c,r);
-				}
-			}
+	protected static int clearFullRows(int[][] field, int[] top, int bottom, int rows) {
+		int cols = top.length;
+
+		// Bit i is set if row bottom + i is full
+		int full = 0;
+		for(int i = 0; i < rows; i++) {
+			int[] row = field[bottom + i];
+			int c = 0;
+			while(c < cols && row[c] != 0)	c++;
+			if(c == cols)	full |= 1 << i;
 		}
-		
-		for(int i = 0; i < COLS; i++) {
-			label.setPenColor(Color.red);
-			label.line(i, top[i], i+1, top[i]);
-			label.setPenColor();
+		if(full == 0)	return 0;
+
+		int maxTop = 0;
+		for(int c = 0; c < cols; c++)	maxTop = Math.max(maxTop, top[c]);
+
+		// Move every row that stays down past the removed ones, keeping their order
+		int removed = Integer.bitCount(full);
+		int to = bottom + Integer.numberOfTrailingZeros(full);
+		for(int from = to + 1; from < maxTop; from++) {
+			int i = from - bottom;
+			if(i < rows && (full & (1 << i)) != 0)	continue;
+			int[] row = field[to];
+			field[to] = field[from];
+			field[from] = row;
+			to++;
 		}
-		
-		label.show();
-	}
-	
-	public static final Color brickCol = Color.gray;
-
-	/**
-	 * Draws a unit block of the box.
-	 */
-	private void drawBrick(int c, int r) {
-		label.filledRectangleLL(c, r, 1, 1, brickCol);
-		label.rectangleLL(c, r, 1, 1);
-	}
-
-	/**
-	 * Draws the next piece above the board.
-	 */
-	public void drawNext(int slot, int orient) {
-		for(int i = 0; i < pWidth[nextPiece][orient]; i++) {
-			for(int j = pBottom[nextPiece][orient][i]; j <pTop[nextPiece][orient][i]; j++) {
-				drawBrick(i+slot, j+ROWS+1);
-			}
+		for(int r = to; r < maxTop; r++) {
+			Arrays.fill(field[r], 0);
 		}
 
-		label.show();
-	}
-
-	/**
-	 * Visualization - Clears the drawing of the next piece so it can be drawn in a different slot/orientation.
-	 */
-	public void clearNext() {
-		label.filledRectangleLL(0, ROWS+.9, COLS, 4.2, TLabel.DEFAULT_CLEAR_COLOR);
-		label.line(0, 0, 0, ROWS+5);
-		label.line(COLS, 0, COLS, ROWS+5);
+		// Columns lose the removed rows, and more if their top brick was in one of them
+		for(int c = 0; c < cols; c++) {
+			int t = top[c] - removed;
+			while(t >= 1 && field[t-1][c] == 0)	t--;
+			top[c] = t;
+		}
+		return removed;
 	}
 
 }
@@ -0,0 +1,186 @@
+import java.awt.Color;
+
+/**
+ * Draws a {@link State} on a {@link TLabel}: the board, its top markers and the next piece above it.
+ *
+ * Kept apart from State so that headless games never load AWT classes. Once a view has drawn a board, only the cells
+ * and top markers that changed are redrawn, unless rows were cleared since. Each view remembers what it last drew, so
+ * games sharing a label, like the cells of a TFrame grid, each need a view of their own.
+ */
+public class StateView {
+
+	public static final Color BRICK_COLOR = Color.gray;
+
+	private final TLabel label;
+
+	// board last drawn, so the next draw only repaints what changed; null forces a full redraw
+	private boolean[][] drawnCells;
+	private int[] drawnTop;
+	private int drawnRowsCleared;
+
+	public StateView(TLabel label) {
+		this.label = label;
+	}
+
+	/**
+	 * Forgets what was drawn, so that the next {@link #draw(State)} redraws the whole board, e.g. after the label was
+	 * drawn over or the view was pointed at another game.
+	 */
+	public void reset() {
+		drawnCells = null;
+		drawnTop = null;
+	}
+
+	public TLabel getLabel() {
+		return label;
+	}
+
+	/**
+	 * Draws the board of {@code s}.
+	 */
+	public void draw(State s) {
+		int rows = s.getRows(), cols = s.getCols();
+		int[][] field = s.getField();
+		int[] top = s.getTop();
+
+		if(drawnCells == null || drawnCells.length != rows || drawnTop.length != cols
+				|| drawnRowsCleared != s.getRowsCleared()) {
+			//nothing drawn yet, a board of another size, or rows were cleared and the whole board shifted down
+			drawAll(s);
+		}
+		else {
+			drawChanges(s);
+			clearNext(s);
+			label.showDirty();
+		}
+
+		if(drawnCells == null || drawnCells.length != rows || drawnTop.length != cols) {
+			drawnCells = new boolean[rows][cols];
+			drawnTop = new int[cols];
+		}
+		for(int r = 0; r < rows; r++) {
+			for(int c = 0; c < cols; c++) {
+				drawnCells[r][c] = field[r][c] != 0;
+			}
+		}
+		System.arraycopy(top, 0, drawnTop, 0, cols);
+		drawnRowsCleared = s.getRowsCleared();
+	}
+
+	private void drawAll(State s) {
+		int rows = s.getRows(), cols = s.getCols();
+		int[][] field = s.getField();
+		int[] top = s.getTop();
+
+		//clear only the board, other games may share the label
+		label.clip(0, 0, cols, rows+5);
+		label.clear();
+		label.unclip();
+		label.setPenRadius();
+		drawOutline(rows, cols);
+
+		//show bricks
+		for(int c = 0; c < cols; c++) {
+			for(int r = 0; r < top[c]; r++) {
+				if(field[r][c] != 0) {
+					drawBrick(c,r);
+				}
+			}
+		}
+
+		for(int i = 0; i < cols; i++) {
+			drawTopMarker(i, top[i]);
+		}
+
+		label.show();
+	}
+
+	/**
+	 * Redraws only the columns whose cells or top changed since the label last drew a board. Each changed stretch of a
+	 * column is cleared under a clip and everything that overlaps it is drawn again, in the same order as drawAll().
+	 */
+	private void drawChanges(State s) {
+		int rows = s.getRows(), cols = s.getCols();
+		int[][] field = s.getField();
+		int[] top = s.getTop();
+
+		label.setPenRadius();
+		for(int c = 0; c < cols; c++) {
+			int low = rows, high = -1;
+			for(int r = 0; r < rows; r++) {
+				if((field[r][c] != 0) != drawnCells[r][c]) {
+					low = Math.min(low, r);
+					high = r+1;
+				}
+			}
+			int oldTop = drawnTop[c];
+			if(oldTop != top[c]) {
+				low = Math.min(low, Math.min(oldTop, top[c]));
+				high = Math.max(high, Math.max(oldTop, top[c]));
+			}
+			if(high < low)	continue;
+
+			label.clip(c, low, 1, high-low);
+			label.clear();
+			drawOutline(rows, cols);
+			for(int i = Math.max(0, c-1); i <= Math.min(cols-1, c+1); i++) {
+				for(int r = Math.max(0, low-1); r <= Math.min(rows-1, high); r++) {
+					if(field[r][i] != 0) {
+						drawBrick(i,r);
+					}
+				}
+			}
+			for(int i = Math.max(0, c-1); i <= Math.min(cols-1, c+1); i++) {
+				drawTopMarker(i, top[i]);
+			}
+			label.unclip();
+		}
+	}
+
+	private void drawOutline(int rows, int cols) {
+		label.line(0, 0, 0, rows+5);
+		label.line(cols, 0, cols, rows+5);
+		label.line(0, 0, cols, 0);
+		label.line(0, rows-1, cols, rows-1);
+	}
+
+	private void drawTopMarker(int c, int top) {
+		label.setPenColor(Color.red);
+		label.line(c, top, c+1, top);
+		label.setPenColor();
+	}
+
+	/**
+	 * Draws a unit block of the box.
+	 */
+	private void drawBrick(int c, int r) {
+		label.filledRectangleLL(c, r, 1, 1, BRICK_COLOR);
+		label.rectangleLL(c, r, 1, 1);
+	}
+
+	/**
+	 * Draws the next piece of {@code s} above the board.
+	 */
+	public void drawNext(State s, int slot, int orient) {
+		int piece = s.getNextPiece();
+		int[][][] pBottom = State.getpBottom(), pTop = State.getpTop();
+		for(int i = 0; i < State.getpWidth()[piece][orient]; i++) {
+			for(int j = pBottom[piece][orient][i]; j < pTop[piece][orient][i]; j++) {
+				drawBrick(i+slot, j+s.getRows()+1);
+			}
+		}
+
+		label.markDirty(0, s.getRows()+.9, s.getCols(), 4.2);
+		label.showDirty();
+	}
+
+	/**
+	 * Clears the drawing of the next piece so it can be drawn in a different slot/orientation.
+	 */
+	public void clearNext(State s) {
+		label.clip(0, s.getRows()+.9, s.getCols(), 4.2);
+		label.clear();
+		drawOutline(s.getRows(), s.getCols());
+		label.unclip();
+	}
+}
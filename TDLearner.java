@@ -0,0 +1,276 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Learns {@link PlayerSkeleton} weights from self-play with linear TD(lambda).
+ *
+ * The value of a move is the weighted sum of its features, exactly as {@link PlayerSkeleton#pickMove} computes it,
+ * so the learned vector can be used by the player directly. The rows cleared by a move are both its reward and one of
+ * its features, which makes the value of a move an estimate of all rows it and the moves after it will clear.
+ *
+ * Actor threads play games with the latest published weights (plus a little random exploration) and put each finished
+ * trajectory on a bounded queue. A single learner thread takes trajectories off the queue, updates the weights and
+ * publishes a copy for the actors. When the learner falls behind, the actors block rather than piling up games.
+ *
+ * Usage: java TDLearner [games] [actor threads] [output file]
+ */
+public class TDLearner {
+
+	public static final String LEARNED_FILE_NAME = "learned.txt";
+
+	private static final int QUEUE_CAPACITY = 64;
+	private static final int SAVE_EVERY_GAMES = 100;
+
+	// How often the learner, while the queue is empty, checks that the actors are still playing
+	private static final int POLL_MILLIS = 500;
+
+	private final double alpha;
+	private final double gamma;
+	private final double lambda;
+	private final double epsilon;
+	private final int turnCap;
+
+	// Latest weights, replaced as a whole so actors always see a consistent vector
+	private volatile float[] published;
+
+	private final BlockingQueue<Trajectory> queue = new ArrayBlockingQueue<Trajectory>(QUEUE_CAPACITY);
+	private final AtomicLong nextSeed = new AtomicLong();
+	private volatile boolean running = true;
+
+	/**
+	 * @param alpha - learning rate, normalised by the squared length of each feature vector
+	 * @param gamma - discount per move
+	 * @param lambda - decay of the eligibility trace
+	 * @param epsilon - chance that an actor plays a random move instead of the best one
+	 * @param turnCap - number of turns after which a self-play game is cut off
+	 */
+	public TDLearner(float[] initial, double alpha, double gamma, double lambda, double epsilon, int turnCap) {
+		this.published = initial.clone();
+		this.alpha = alpha;
+		this.gamma = gamma;
+		this.lambda = lambda;
+		this.epsilon = epsilon;
+		this.turnCap = turnCap;
+	}
+
+	public float[] getWeights() {
+		return published.clone();
+	}
+
+	/**
+	 * Learns from {@code games} self-play games played on {@code actors} threads, saving the weights to
+	 * {@code outputFile} every few games and at the end. If an actor or the learner fails, learning stops and its
+	 * exception or error is thrown here, without saving the weights at the end.
+	 */
+	public float[] learn(int games, int actors, String outputFile) throws InterruptedException, IOException {
+		// First exception or error of any actor or of the learner, which stops the learning
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < actors; i++) {
+			final Random random = new Random(i);
+			Thread actor = new Thread(new Runnable() {
+				public void run() {
+					try {
+						while (running) {
+							queue.put(play(random));
+						}
+					} catch (InterruptedException e) {
+						// stopped by the learner
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			}, "td-actor-" + i);
+			actor.setDaemon(true);
+			actor.start();
+			threads.add(actor);
+		}
+
+		final double[] weights = new double[PlayerSkeleton.NUM_PARAMETERS];
+		float[] initial = published;
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = initial[i];
+		}
+
+		final int target = games;
+		final String file = outputFile;
+		Thread learner = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (int game = 1; game <= target; game++) {
+						Trajectory trajectory = next(threads, failure);
+						if (trajectory == null) {
+							// An actor failed
+							return;
+						}
+						update(weights, trajectory);
+						publish(weights);
+
+						if (game % SAVE_EVERY_GAMES == 0) {
+							System.out.println("Game " + game + ": " + trajectory.rows + " rows, weights "
+									+ ParameterStore.formatWeights(published));
+							ParameterStore.saveWeights(file, published);
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			}
+		}, "td-learner");
+		learner.start();
+		learner.join();
+
+		running = false;
+		for (Thread actor : threads) {
+			actor.interrupt();
+		}
+		rethrow(failure.get());
+
+		ParameterStore.saveWeights(outputFile, published);
+		return getWeights();
+	}
+
+	/**
+	 * Waits for the next finished game, or returns null once an actor has failed. Rather than wait forever, fails if
+	 * every actor has stopped without one.
+	 */
+	private Trajectory next(List<Thread> actors, AtomicReference<Throwable> failure) throws InterruptedException {
+		while (failure.get() == null) {
+			Trajectory trajectory = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if (trajectory != null) {
+				return trajectory;
+			}
+			boolean alive = false;
+			for (Thread actor : actors) {
+				alive |= actor.isAlive();
+			}
+			if (!alive) {
+				throw new IllegalStateException("every actor stopped");
+			}
+		}
+		return null;
+	}
+
+	// Rethrows the failure of an actor or the learner as it was, and does nothing if there was none
+	private static void rethrow(Throwable failure) throws IOException {
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IOException(failure);
+		}
+	}
+
+	/**
+	 * Plays one self-play game with the published weights and records the features of every move made.
+	 */
+	private Trajectory play(Random random) {
+		PlayerSkeleton p = new PlayerSkeleton(published);
+		State s = new State(nextSeed.getAndIncrement());
+		Trajectory trajectory = new Trajectory();
+		PlayerMetrics metrics = PlayerMetrics.get();
+
+		metrics.gameStarted();
+		while (!s.hasLost() && s.getTurnNumber() < turnCap) {
+			int[][] legalMoves = s.legalMoves();
+			long start = System.nanoTime();
+			int move = random.nextDouble() < epsilon ? random.nextInt(legalMoves.length) : p.pickMove(s, legalMoves);
+			long decided = System.nanoTime();
+
+			float[] features = new float[PlayerSkeleton.NUM_PARAMETERS];
+			if (!p.simulateMoveFeatures(s, legalMoves[move], features)) {
+				trajectory.lost = true;
+				break;
+			}
+			trajectory.features.add(features);
+
+			int rows = s.getRowsCleared();
+			s.makeMove(move);
+			metrics.moveMade(decided - start, s.getTurnNumber(), s.getRowsCleared() - rows);
+		}
+		metrics.gameFinished();
+
+		trajectory.rows = s.getRowsCleared();
+		return trajectory;
+	}
+
+	/**
+	 * One forward pass of TD(lambda) with accumulating traces over a trajectory. The reward of each move is the
+	 * rows-cleared feature. A lost game has no value after its last move; a game cut off at the turn cap only uses its
+	 * last move to bootstrap the one before.
+	 */
+	private void update(double[] weights, Trajectory trajectory) {
+		List<float[]> features = trajectory.features;
+		int last = trajectory.lost ? features.size() : features.size() - 1;
+		double[] trace = new double[weights.length];
+
+		for (int t = 0; t < last; t++) {
+			float[] current = features.get(t);
+			double reward = current[PlayerSkeleton.ROWS_CLEARED_MULT_INDEX];
+			double next = t + 1 < features.size() ? value(weights, features.get(t + 1)) : 0;
+			double delta = reward + gamma * next - value(weights, current);
+
+			double norm = 1;
+			for (int i = 0; i < weights.length; i++) {
+				trace[i] = gamma * lambda * trace[i] + current[i];
+				norm += current[i] * current[i];
+			}
+			for (int i = 0; i < weights.length; i++) {
+				weights[i] += alpha * delta * trace[i] / norm;
+			}
+		}
+	}
+
+	private static double value(double[] weights, float[] features) {
+		double value = 0;
+		for (int i = 0; i < weights.length; i++) {
+			value += weights[i] * features[i];
+		}
+		return value;
+	}
+
+	private void publish(double[] weights) {
+		float[] copy = new float[weights.length];
+		for (int i = 0; i < weights.length; i++) {
+			copy[i] = (float) weights[i];
+		}
+		published = copy;
+	}
+
+	private static class Trajectory {
+		final List<float[]> features = new ArrayList<float[]>();
+		boolean lost;
+		int rows;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int actors = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		String outputFile = args.length > 2 ? args[2] : LEARNED_FILE_NAME;
+		PlayerMetrics.register();
+
+		float[] initial = ParameterStore.readWeights(PlayerSkeleton.PARAM_FILE_NAME);
+		if (initial == null) {
+			initial = PlayerSkeleton.getMultiplierWeights();
+		}
+
+		TDLearner learner = new TDLearner(initial, 0.001, 0.99, 0.7, 0.01, 5000);
+		long start = System.currentTimeMillis();
+		float[] learned = learner.learn(games, actors, outputFile);
+
+		System.out.println("Learned " + ParameterStore.formatWeights(learned) + " in "
+				+ TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - start) + " s, saved to " + outputFile);
+	}
+}
@@ -1,3 +1,4 @@
+import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
@@ -12,44 +13,105 @@ import javax.swing.JFrame;
 
 public class TFrame extends JFrame implements KeyListener{
 	private static final long serialVersionUID = 1L;
-	public TLabel label = new TLabel(300,700);
+	public TLabel label;
+	public StateView view;
 	public State s;
 	
 	public int orient, slot;
 	
 	public static final int MANUAL = 0;
 	public static final int NONE = 1;
+	public static final int GRID = 2;
 	
 	public int mode = MANUAL;
-	
+
+	// size of one game in GRID mode
+	public static final int CELL_WIDTH = 150;
+	public static final int CELL_HEIGHT = 350;
+
+	// number of games shown, and how many of them side by side
+	public int games = 1;
+	private int gridColumns = 1, gridRows = 1;
+
+	// one view per cell, each remembering what it last drew there; selectCell() makes it the current view
+	private StateView[] cellViews;
+
 	//constructor
 	public TFrame (State s){
 		this.s = s;
-		s.label = label;
+		label = new TLabel(300,700);
+		view = new StateView(label);
 		setResizable(false);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);            // closes all windows when this is closed
 		setTitle("Tetris BKW");
 		setContentPane(label.draw);
 		pack();
 		label.BORDER = .05;
-		label.setXscale(0, State.COLS);
-		label.setYscale(0, State.ROWS+5);
+		label.setXscale(0, s.getCols());
+		label.setYscale(0, s.getRows()+5);
 		this.addKeyListener(this);  //may be unnecessary (not certain)
 		setVisible(true);
 	}
 	
 	//switches which state is attached to this TFrame
 	public void bindState(State s) {
-		if(s!= null)	s.label = null;
 		this.s = s;
-		s.label = label;
+		view.reset();
+		if(mode != GRID) {
+			label.setXscale(0, s.getCols());
+			label.setYscale(0, s.getRows()+5);
+		}
+	}
+	
+	//shows a grid of games at once, each drawn into its own cell of the label after selectCell()
+	//cells have a fixed size in pixels, and each game's board is scaled to fill its cell
+	public TFrame (int games){
+		this.games = games;
+		mode = GRID;
+		gridColumns = Math.min(games, (int) Math.ceil(Math.sqrt(games * (double) CELL_HEIGHT / CELL_WIDTH)));
+		gridRows = (games + gridColumns - 1) / gridColumns;
+		label = new TLabel(gridColumns * CELL_WIDTH, gridRows * CELL_HEIGHT);
+		cellViews = new StateView[games];
+		for(int i = 0; i < games; i++) {
+			cellViews[i] = new StateView(label);
+		}
+		view = cellViews[0];
+		label.setFont(new Font("SansSerif", Font.PLAIN, 10));
+		setResizable(false);
+		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);            // closes all windows when this is closed
+		setTitle("Tetris BKW - " + games + " games");
+		setContentPane(label.draw);
+		pack();
+		this.addKeyListener(this);
+		setVisible(true);
+	}
+
+	//points the label's coordinates and the view at the given game's cell, sized for s, so that drawing s lands there
+	public void selectCell(int game, State s) {
+		view = cellViews[game];
+
+		//each cell spans the board plus a 5% border, as in a single game window
+		double w = s.getCols() * 1.1;
+		double h = (s.getRows()+5) * 1.1;
+		label.xmin = -.05 * s.getCols() - (game % gridColumns) * w;
+		label.xmax = label.xmin + gridColumns * w;
+		label.ymax = 1.05 * (s.getRows()+5) + (game / gridColumns) * h;
+		label.ymin = label.ymax - gridRows * h;
+	}
+
+	//writes the number and score of a game over its next piece, in the selected cell
+	public void drawScore(int game, State s) {
+		label.text(s.getCols()*.75, s.getRows()+3.5, "#" + (game+1));
+		label.text(s.getCols()*.75, s.getRows()+2, s.getRowsCleared() + (s.hasLost() ? " lost" : " rows"));
+		label.markDirty(0, s.getRows()+.9, s.getCols(), 4.2);
 	}
 	
 	///
 	/// ADDED BY DON (AKA Pimp Masta) 1/22/09
 	///
 	public TFrame (){
-		s.label = label;
+		label = new TLabel(300,700);
+		view = new StateView(label);
 		setResizable(false);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);            // closes all windows when this is closed
 		setTitle("Eric Whitman's Tetris Simulator");
@@ -67,38 +129,39 @@ public class TFrame extends JFrame implements KeyListener{
 			case(MANUAL): {
 				switch(e.getKeyCode()) {
 					case(KeyEvent.VK_RIGHT): {
-						if(slot < State.COLS-State.pWidth[s.nextPiece][orient])	slot++;
-						s.clearNext();
-						s.drawNext(slot, orient);
+						if(slot < s.getCols()-State.pWidth[s.nextPiece][orient])	slot++;
+						view.clearNext(s);
+						view.drawNext(s, slot, orient);
 						break;
 					}
 					case(KeyEvent.VK_LEFT): {
 						if(slot > 0)	slot--;
-						s.clearNext();
-						s.drawNext(slot, orient);
+						view.clearNext(s);
+						view.drawNext(s, slot, orient);
 						break;
 					}
 					case(KeyEvent.VK_UP): {
 						orient++;
 						if(orient%State.pOrients[s.nextPiece]==0)	orient = 0;
-						if(slot > State.COLS-State.pWidth[s.nextPiece][orient])
-							slot = State.COLS-State.pWidth[s.nextPiece][orient];
-						s.clearNext();
-						s.drawNext(slot, orient);
+						if(slot > s.getCols()-State.pWidth[s.nextPiece][orient])
+							slot = s.getCols()-State.pWidth[s.nextPiece][orient];
+						view.clearNext(s);
+						view.drawNext(s, slot, orient);
 						break;
 					}
 					case(KeyEvent.VK_DOWN): {
 						if(!s.makeMove(orient, slot))	mode = NONE;
 						if(orient >= State.pOrients[s.nextPiece])	orient = 0;
-						if(slot > State.COLS-State.pWidth[s.nextPiece][orient])
-							slot = State.COLS-State.pWidth[s.nextPiece][orient];
+						if(slot > s.getCols()-State.pWidth[s.nextPiece][orient])
+							slot = s.getCols()-State.pWidth[s.nextPiece][orient];
 						
-						s.draw();
+						view.draw(s);
 						if(mode == NONE)	{
-							label.text(State.COLS/2.0, State.ROWS/2.0, "You Lose");
+							label.text(s.getCols()/2.0, s.getRows()/2.0, "You Lose");
+							label.show();
 						}
-						s.clearNext();
-						s.drawNext(slot, orient);
+						view.clearNext(s);
+						view.drawNext(s, slot, orient);
 						break;
 					}
 					default:
@@ -106,6 +169,7 @@ public class TFrame extends JFrame implements KeyListener{
 				}
 			}
 			case(NONE):	break;
+			case(GRID):	break;
 			default:
 				System.out.println("unknown mode");
 				break;
@@ -145,8 +209,8 @@ public class TFrame extends JFrame implements KeyListener{
 	public static void main(String[] args) {
 		State s = new State();
 		TFrame t = new TFrame(s);
-		s.draw();
-		s.drawNext(0,0);
+		t.view.draw(s);
+		t.view.drawNext(s, 0,0);
 		//t.save("picture.png");
 		
 	}
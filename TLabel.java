@@ -10,7 +10,9 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
 import java.awt.event.KeyListener;
@@ -84,6 +86,13 @@ public class TLabel{
 	// double buffered graphics
 	private BufferedImage offscreenImage, onscreenImage;
 	protected Graphics2D offscreen, onscreen;
+
+	// part of the offscreen image changed since it was last shown, in pixels; null if nothing changed
+	private Rectangle dirty;
+
+	// while batching, show() and showDirty() only collect what changed, and endBatch() shows it all at once
+	private boolean batching;
+
 	
 	// change the user coordinate system
 	public void setXscale() { setXscale(DEFAULT_XMIN, DEFAULT_XMAX); }
@@ -145,6 +154,32 @@ public class TLabel{
 		//show();
 	}
 
+	// pixel rectangle covering the user rectangle with lower left corner (x, y), padded for line widths
+	public Rectangle pixelRect(double x, double y, double w, double h) {
+		int pad = (int) Math.ceil(penRadius) + 2;
+		int x0 = (int) Math.floor(scaleX(x)) - pad;
+		int x1 = (int) Math.ceil(scaleX(x + w)) + pad;
+		int y0 = (int) Math.floor(scaleY(y + h)) - pad;
+		int y1 = (int) Math.ceil(scaleY(y)) + pad;
+		return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	// remember that the user rectangle with lower left corner (x, y) changed, so showDirty() copies it
+	public void markDirty(double x, double y, double w, double h) {
+		Rectangle r = pixelRect(x, y, w, h);
+		dirty = dirty == null ? r : dirty.union(r);
+	}
+
+	// restrict drawing to the user rectangle with lower left corner (x, y) and mark it dirty
+	public void clip(double x, double y, double w, double h) {
+		markDirty(x, y, w, h);
+		offscreen.setClip(pixelRect(x, y, w, h));
+	}
+
+	public void unclip() {
+		offscreen.setClip(null);
+	}
+
 	// set the pen size
 	public void setPenRadius() { setPenRadius(DEFAULT_PEN_RADIUS); }
 	public void setPenRadius(double r) {
@@ -165,12 +200,16 @@ public class TLabel{
 	// write the given string in the current font
 	public void setFont() { setFont(DEFAULT_FONT); }
 	public void setFont(Font f) { 
-		Toolkit toolkit = java . awt . Toolkit . getDefaultToolkit ();
-		double x = toolkit.getScreenSize().getWidth();
-		double y = toolkit.getScreenSize().getHeight();
-		double xscale = x/1400.0;
-		double yscale = y/1050.0;
-		double scale = Math.sqrt((xscale*xscale+yscale*yscale)/2);
+		// scale fonts with the screen, or not at all when there is no screen (headless rendering)
+		double scale = 1;
+		if (!GraphicsEnvironment.isHeadless()) {
+			Toolkit toolkit = java . awt . Toolkit . getDefaultToolkit ();
+			double x = toolkit.getScreenSize().getWidth();
+			double y = toolkit.getScreenSize().getHeight();
+			double xscale = x/1400.0;
+			double yscale = y/1050.0;
+			scale = Math.sqrt((xscale*xscale+yscale*yscale)/2);
+		}
 
 		font = f.deriveFont((float) (f.getSize()*scale));
 	}
@@ -614,8 +653,47 @@ public class TLabel{
 	
 
 	
+	// copy the offscreen image into an image of the same size, without needing a screen
+	public void copyImage(BufferedImage target) {
+		Graphics2D g = target.createGraphics();
+		g.drawImage(offscreenImage, 0, 0, null);
+		g.dispose();
+	}
+
+	public void beginBatch() {
+		batching = true;
+	}
+
+	public void endBatch() {
+		batching = false;
+		showDirty();
+	}
+
+	// view on-screen only the parts marked dirty since the last show
+	public void showDirty() {
+		if (batching || dirty == null) return;
+		Rectangle r = dirty.intersection(new Rectangle(0, 0, width, height));
+		dirty = null;
+		if (r.isEmpty()) return;
+
+		onscreen.setClip(r);
+		onscreen.drawImage(offscreenImage, 0, 0, null);
+		onscreen.setClip(null);
+		try{
+			draw.repaint(r);
+		}
+		catch(NullPointerException e){
+			System.out.println("Null Pointer Exception in showDirty");
+		}
+	}
+
 	// view on-screen, creating new frame if necessary
 	public void show() {
+		if (batching) {
+			dirty = new Rectangle(0, 0, width, height);
+			return;
+		}
+		dirty = null;
 		onscreen.drawImage(offscreenImage, 0, 0, null);
 		try{
 			draw.repaint();
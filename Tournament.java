@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays several entrants, each a weight file and a player configuration, on the same seeded games and ranks them.
+ *
+ * Every entrant plays every seed, so two entrants always face the same pieces on the same board (for the greedy
+ * players at least, the random player draws its own moves). The table lists the mean rows cleared with its 95%
+ * confidence interval, the games lost, and the moves per second of the entrant's games, ranked by mean. Below it, the
+ * win rate of every entrant against every other is the share of seeds on which it cleared more rows, a tie counting
+ * half. Seeds are shared out over all processors, interleaved so that every entrant progresses at the same pace, and
+ * every entrant is warmed up before any game is timed.
+ *
+ * Usage: java Tournament [options] entrant...
+ *
+ * An entrant is FILE or FILE:PLAYER, where FILE is a weight file in the parameter.txt format, or "default" for the
+ * built-in weights, and PLAYER is one of
+ *   greedy    PlayerSkeleton (default)
+ *   contours  PlayerSkeleton reading landing heights from a ContourCache shared by its games
+ * or "random" for uniform legal moves, as a baseline.
+ *
+ * Options take the same values as in HeadlessRunner:
+ *   --games N, --seed-start N, --threads N, --distribution uniform|hard, --turn-cap N, --rows N, --cols N,
+ *   --scenario NAME
+ */
+public class Tournament {
+
+	// Two-sided 95% quantile of the normal distribution
+	private static final double Z_95 = 1.96;
+
+	// Untimed turns each entrant plays before the tournament
+	public static final int WARMUP_TURNS = 20000;
+
+	public static final String GREEDY = "greedy";
+	public static final String CONTOURS = "contours";
+	public static final String RANDOM = "random";
+	public static final String DEFAULT_WEIGHTS = "default";
+
+	/**
+	 * One weight file played with one player configuration, and the games it has played so far.
+	 */
+	public static class Entrant {
+		private final String name;
+		private final PlayerSkeleton player;
+
+		// Indexed like the tournament's seeds
+		private final int[] rows;
+		private final int[] turns;
+		private final boolean[] lost;
+		private long nanos;
+
+		Entrant(String name, PlayerSkeleton player, int games) {
+			this.name = name;
+			this.player = player;
+			this.rows = new int[games];
+			this.turns = new int[games];
+			this.lost = new boolean[games];
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		// Synchronized by the caller's lock on the entrant
+		void add(int game, State s, long gameNanos) {
+			rows[game] = s.getRowsCleared();
+			turns[game] = s.getTurnNumber();
+			lost[game] = s.hasLost();
+			nanos += gameNanos;
+		}
+
+		public GameEvaluator.Result getResult() {
+			GameEvaluator.Result result = new GameEvaluator.Result();
+			for (int g = 0; g < rows.length; g++) {
+				result.add(rows[g], turns[g], lost[g]);
+			}
+			return result;
+		}
+
+		// Half width of the 95% confidence interval of the mean rows
+		public double getConfidence() {
+			GameEvaluator.Result result = getResult();
+			return Z_95 * Math.sqrt(result.getVariance() / Math.max(result.getGames(), 1));
+		}
+
+		// Moves made per second of game time, summed over the threads that played the entrant's games
+		public double getMovesPerSecond() {
+			return nanos == 0 ? 0 : getResult().getTurns() * 1e9 / nanos;
+		}
+
+		/**
+		 * Share of seeds on which this entrant cleared more rows than {@code other}, a tie counting half.
+		 */
+		public double winRate(Entrant other) {
+			double wins = 0;
+			for (int g = 0; g < rows.length; g++) {
+				if (rows[g] > other.rows[g]) {
+					wins++;
+				} else if (rows[g] == other.rows[g]) {
+					wins += 0.5;
+				}
+			}
+			return wins / rows.length;
+		}
+	}
+
+	private int games = 30;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long seedStart = 0;
+	private double[] distribution;
+	private int turnCap = GameEvaluator.NO_CAP;
+	private int rows = State.ROWS;
+	private int cols = State.COLS;
+	private Scenario scenario;
+	private final List<String> specs = new ArrayList<String>();
+
+	Tournament(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (!option.startsWith("--")) {
+				specs.add(option);
+				continue;
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("missing value for " + option);
+			}
+			String value = args[++i];
+
+			if (option.equals("--games")) {
+				games = Integer.parseInt(value);
+			} else if (option.equals("--threads")) {
+				threads = Integer.parseInt(value);
+			} else if (option.equals("--seed-start")) {
+				seedStart = Long.parseLong(value);
+			} else if (option.equals("--distribution")) {
+				distribution = value.equals("hard") ? GameEvaluator.HARD_DISTRIBUTION : null;
+			} else if (option.equals("--turn-cap")) {
+				turnCap = Integer.parseInt(value);
+			} else if (option.equals("--rows")) {
+				rows = Integer.parseInt(value);
+			} else if (option.equals("--cols")) {
+				cols = Integer.parseInt(value);
+			} else if (option.equals("--scenario")) {
+				scenario = Scenario.get(value);
+			} else {
+				throw new IllegalArgumentException("unknown option " + option);
+			}
+		}
+
+		if (scenario != null && (rows != State.ROWS || cols != State.COLS)) {
+			throw new IllegalArgumentException("scenarios are played on the standard board");
+		}
+		if (specs.isEmpty()) {
+			throw new IllegalArgumentException("no entrants, e.g. java Tournament parameter.txt default:greedy");
+		}
+	}
+
+	/**
+	 * Creates the entrant described by {@code spec}, FILE, FILE:PLAYER or random.
+	 */
+	Entrant createEntrant(String spec) throws IOException {
+		if (spec.equals(RANDOM)) {
+			return new Entrant(RANDOM, new HeadlessRunner.RandomPlayer(), games);
+		}
+		int colon = spec.lastIndexOf(':');
+		String file = colon < 0 ? spec : spec.substring(0, colon);
+		String mode = colon < 0 ? GREEDY : spec.substring(colon + 1);
+
+		float[] weights;
+		if (file.equals(DEFAULT_WEIGHTS)) {
+			weights = PlayerSkeleton.getMultiplierWeights();
+		} else {
+			weights = ParameterStore.readWeights(file);
+			if (weights == null) {
+				throw new IllegalArgumentException("no weights in " + file);
+			}
+		}
+
+		PlayerSkeleton player;
+		if (mode.equals(GREEDY)) {
+			player = new PlayerSkeleton(weights);
+		} else if (mode.equals(CONTOURS)) {
+			player = new PlayerSkeleton(weights, new ContourCache(cols, ContourCache.DEFAULT_CAPACITY));
+		} else {
+			throw new IllegalArgumentException("unknown player " + mode + " in " + spec);
+		}
+		return new Entrant(file + ":" + mode, player, games);
+	}
+
+	/**
+	 * Plays every entrant on every seed and returns the entrants ranked by mean rows cleared. A game that fails stops
+	 * the tournament with its exception rather than counting as a game without rows.
+	 */
+	List<Entrant> run() throws IOException, InterruptedException, ExecutionException {
+		final List<Entrant> entrants = new ArrayList<Entrant>();
+		for (String spec : specs) {
+			entrants.add(createEntrant(spec));
+		}
+
+		final long[] seeds = GameEvaluator.seeds(seedStart, games);
+		final GameEvaluator evaluator = evaluator(turnCap);
+		warmUp(entrants);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> played = new ArrayList<Future<?>>();
+		for (int g = 0; g < seeds.length; g++) {
+			// Rotate who goes first on each seed, so that no entrant always runs alongside the same others
+			for (int e = 0; e < entrants.size(); e++) {
+				final Entrant entrant = entrants.get((g + e) % entrants.size());
+				final int game = g;
+				played.add(pool.submit(new Runnable() {
+					public void run() {
+						long start = System.nanoTime();
+						State s = evaluator.play(entrant.player, seeds[game]);
+						long nanos = System.nanoTime() - start;
+
+						synchronized (entrant) {
+							entrant.add(game, s, nanos);
+						}
+					}
+				}));
+			}
+		}
+		try {
+			for (Future<?> game : played) {
+				game.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		// Ranked copies are read after the pool has finished, so no more locking is needed
+		List<Entrant> ranked = new ArrayList<Entrant>(entrants);
+		ranked.sort(new Comparator<Entrant>() {
+			public int compare(Entrant a, Entrant b) {
+				return Double.compare(b.getResult().getMeanRows(), a.getResult().getMeanRows());
+			}
+		});
+		return ranked;
+	}
+
+	private GameEvaluator evaluator(int cap) {
+		return scenario != null ? new GameEvaluator(scenario, cap) : new GameEvaluator(cap, distribution, rows, cols);
+	}
+
+	/**
+	 * Plays every entrant for {@link #WARMUP_TURNS} turns without timing them, so that the compiler's work is not
+	 * charged to whichever entrant happens to play first.
+	 */
+	private void warmUp(List<Entrant> entrants) {
+		GameEvaluator evaluator = evaluator(Math.min(turnCap, WARMUP_TURNS));
+		for (Entrant entrant : entrants) {
+			// Seeds below zero, which the timed games never use
+			long seed = -1;
+			for (int turns = 0; turns < WARMUP_TURNS; seed--) {
+				turns += evaluator.play(entrant.player, seed).getTurnNumber();
+			}
+		}
+	}
+
+	/**
+	 * Formats the ranking table and the matrix of pairwise win rates, row against column.
+	 */
+	public String report(List<Entrant> ranked) {
+		int width = "entrant".length();
+		for (Entrant entrant : ranked) {
+			width = Math.max(width, entrant.getName().length());
+		}
+
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("%d games per entrant, seeds %d to %d%s%s%n", games, seedStart, seedStart + games - 1,
+				scenario == null ? "" : ", scenario " + scenario.getName(),
+				turnCap == GameEvaluator.NO_CAP ? "" : ", capped at " + turnCap + " turns"));
+		out.append(String.format("%4s  %-" + width + "s %12s %12s %8s %12s%s%n", "rank", "entrant", "mean rows",
+				"95% CI +/-", "lost", "moves/s", turnCap == GameEvaluator.NO_CAP ? "" : "    estimated"));
+		for (int i = 0; i < ranked.size(); i++) {
+			Entrant entrant = ranked.get(i);
+			GameEvaluator.Result result = entrant.getResult();
+			out.append(String.format("%4d  %-" + width + "s %12.1f %12.1f %8s %12.0f%s%n", i + 1, entrant.getName(),
+					result.getMeanRows(), entrant.getConfidence(), result.getLost() + "/" + result.getGames(),
+					entrant.getMovesPerSecond(), turnCap == GameEvaluator.NO_CAP ? ""
+							: String.format(" %12.1f", result.getEstimatedRows())));
+		}
+
+		out.append(String.format("%nWin rate of row against column%n%4s ", ""));
+		for (int j = 0; j < ranked.size(); j++) {
+			out.append(String.format(" %6d", j + 1));
+		}
+		out.append(String.format("%n"));
+		for (int i = 0; i < ranked.size(); i++) {
+			out.append(String.format("%4d ", i + 1));
+			for (int j = 0; j < ranked.size(); j++) {
+				out.append(i == j ? String.format(" %6s", "-")
+						: String.format(" %5.0f%%", 100 * ranked.get(i).winRate(ranked.get(j))));
+			}
+			out.append(String.format("%n"));
+		}
+		return out.toString();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Tournament tournament = new Tournament(args);
+		System.out.print(tournament.report(tournament.run()));
+	}
+}
@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Searches for better {@link PlayerSkeleton} weights with a simple hill climber.
+ *
+ * Each iteration perturbs the best weights found so far, evaluates the candidate on the same seeded games and keeps
+ * it if it clears more lines. The step size grows after an improvement and shrinks otherwise.
+ *
+ * Every evaluation is appended to the history file, the best weights are saved to parameter.txt as soon as they
+ * improve, and a checkpoint is written after every iteration. The random perturbation of an iteration is derived from
+ * the run seed and the iteration number, so a run that is killed and restarted continues exactly where it stopped.
+ *
+ * Games evaluated in this process are kept in a {@link FitnessCache}, so revisited weights cost nothing.
+ *
+ * After every iteration the search publishes an immutable {@link Progress} snapshot, which a
+ * {@link TuningDashboard} (run with -Ddashboard=true) polls without ever blocking the search.
+ *
+ * Usage: java Tuner [iterations] [games per evaluation] [turn cap] [coordinator port] [job timeout seconds]
+ */
+public class Tuner {
+
+	/**
+	 * The search as it was after one iteration. Never modified once published.
+	 */
+	public static class Progress {
+		public final int iteration;
+		public final double step;
+		public final float[] best;
+		// Best fitness after, and mean rows per game of the candidate of, each iteration of this run
+		public final double[] bestFitness;
+		public final double[] meanRows;
+		// Games per bucket of rows cleared in the latest evaluation, see GameEvaluator.Result.bucket
+		public final int[] histogram;
+
+		Progress(int iteration, double step, float[] best, double[] bestFitness, double[] meanRows, int[] histogram) {
+			this.iteration = iteration;
+			this.step = step;
+			this.best = best;
+			this.bestFitness = bestFitness;
+			this.meanRows = meanRows;
+			this.histogram = histogram;
+		}
+	}
+
+	private static final double INITIAL_STEP = 0.2;
+	private static final double MIN_STEP = 0.01;
+	private static final double GROW = 1.5;
+	private static final double SHRINK = 0.9;
+
+	private final GameEvaluator evaluator;
+	private final TuningCoordinator coordinator;
+	private final long[] seeds;
+	private final String checkpointFile;
+	private final String historyFile;
+	private FitnessCache cache;
+
+	// Search state, all of which is saved in the checkpoint
+	private long runSeed;
+	private int iteration;
+	private double step = INITIAL_STEP;
+	private float[] best;
+	private double bestFitness = Double.NEGATIVE_INFINITY;
+
+	// Per iteration values of this run, and the latest snapshot of them
+	private double[] bestHistory = new double[64];
+	private double[] meanHistory = new double[64];
+	private int history;
+	private volatile Progress progress;
+
+	/**
+	 * @param coordinator - distributes evaluations to workers, or null to evaluate in this process
+	 */
+	public Tuner(GameEvaluator evaluator, TuningCoordinator coordinator, long[] seeds, String checkpointFile,
+			String historyFile) {
+		this.evaluator = evaluator;
+		this.coordinator = coordinator;
+		this.seeds = seeds;
+		this.checkpointFile = checkpointFile;
+		this.historyFile = historyFile;
+	}
+
+	/**
+	 * Resumes from the checkpoint file if there is one. Otherwise starts a new run from {@code initial}.
+	 *
+	 * A checkpoint written under a different evaluation config (seeds, turn cap, piece distribution, board size or
+	 * scenario) is refused, since its best fitness cannot be compared with the fitness of new candidates. Checkpoints
+	 * written before the config was recorded are resumed as they are.
+	 *
+	 * @return true if a checkpoint was found
+	 * @throws IllegalArgumentException if the checkpoint was written under a different evaluation config
+	 */
+	public boolean resumeOrStart(float[] initial, long runSeed) throws IOException {
+		Map<String, String> checkpoint = ParameterStore.readCheckpoint(checkpointFile);
+		if (checkpoint == null) {
+			this.runSeed = runSeed;
+			this.best = initial.clone();
+			return false;
+		}
+
+		String config = checkpoint.get("config");
+		if (config != null && !config.equals(config())) {
+			throw new IllegalArgumentException(checkpointFile + " was written for " + config + ", not " + config()
+					+ ": rerun with the same arguments or delete it to start over");
+		}
+
+		this.runSeed = Long.parseLong(checkpoint.get("runSeed"));
+		this.iteration = Integer.parseInt(checkpoint.get("iteration"));
+		this.step = Double.parseDouble(checkpoint.get("step"));
+		this.best = ParameterStore.parseWeights(checkpoint.get("best"));
+		this.bestFitness = Double.parseDouble(checkpoint.get("bestFitness"));
+		return true;
+	}
+
+	/**
+	 * Answers local evaluations from {@code cache} where possible. Evaluations through a coordinator use the caches of
+	 * the workers instead.
+	 */
+	public void setCache(FitnessCache cache) {
+		this.cache = cache;
+	}
+
+	public int getIteration() {
+		return iteration;
+	}
+
+	public float[] getBest() {
+		return best.clone();
+	}
+
+	public double getBestFitness() {
+		return bestFitness;
+	}
+
+	/**
+	 * Latest snapshot of the search, or null before the first evaluation. Safe to call from any thread.
+	 */
+	public Progress getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Runs until {@code lastIteration} iterations have been completed in total, including those of earlier runs.
+	 */
+	public void run(int lastIteration) throws Exception {
+		// The starting weights are scored as iteration 0
+		if (bestFitness == Double.NEGATIVE_INFINITY) {
+			GameEvaluator.Result result = evaluate(best);
+			bestFitness = result.getEstimatedRows();
+			publish(result);
+			iteration = 1;
+			checkpoint();
+		}
+
+		while (iteration <= lastIteration) {
+			GameEvents.TuningIteration event = new GameEvents.TuningIteration();
+			event.begin();
+
+			float[] candidate = perturb(best, new Random(runSeed * 31 + iteration));
+			GameEvaluator.Result result = evaluate(candidate);
+			double fitness = result.getEstimatedRows();
+
+			event.end();
+			if (event.shouldCommit()) {
+				event.iteration = iteration;
+				event.weights = ParameterStore.formatWeights(candidate);
+				event.fitness = fitness;
+				event.accepted = fitness > bestFitness;
+				event.commit();
+			}
+
+			if (fitness > bestFitness) {
+				best = candidate;
+				bestFitness = fitness;
+				step *= GROW;
+				ParameterStore.saveWeights(PlayerSkeleton.PARAM_FILE_NAME, best);
+			} else {
+				step = Math.max(MIN_STEP, step * SHRINK);
+			}
+			publish(result);
+
+			System.out.println("Iteration " + iteration + ": " + fitness + " (best " + bestFitness + ", step " + step
+					+ ")");
+			iteration++;
+			checkpoint();
+		}
+	}
+
+	private void publish(GameEvaluator.Result latest) {
+		if (history == bestHistory.length) {
+			bestHistory = Arrays.copyOf(bestHistory, 2 * history);
+			meanHistory = Arrays.copyOf(meanHistory, 2 * history);
+		}
+		bestHistory[history] = bestFitness;
+		meanHistory[history] = latest.getMeanRows();
+		history++;
+		progress = new Progress(iteration, step, best.clone(), Arrays.copyOf(bestHistory, history),
+				Arrays.copyOf(meanHistory, history), latest.getHistogram());
+	}
+
+	private GameEvaluator.Result evaluate(float[] weights) throws Exception {
+		GameEvaluator.Result result;
+		if (coordinator != null) {
+			result = coordinator.evaluate(weights, seeds, 1);
+		} else if (cache != null) {
+			result = cache.evaluate(evaluator, weights, seeds);
+		} else {
+			result = evaluator.evaluate(weights, seeds);
+		}
+		ParameterStore.appendHistory(historyFile, iteration, weights, result);
+		return result;
+	}
+
+	// Moves every weight by a normally distributed amount proportional to its size and the step
+	private float[] perturb(float[] weights, Random random) {
+		float[] candidate = new float[weights.length];
+		for (int i = 0; i < weights.length; i++) {
+			double scale = Math.max(Math.abs(weights[i]), 0.1);
+			candidate[i] = (float) (weights[i] + random.nextGaussian() * step * scale);
+		}
+		return candidate;
+	}
+
+	// Everything a fitness depends on besides the weights, in one line
+	private String config() {
+		StringBuilder config = new StringBuilder("turnCap ").append(evaluator.getTurnCap()).append(" distribution ");
+		double[] distribution = evaluator.getPieceDistribution();
+		if (distribution == null) {
+			config.append('-');
+		} else {
+			for (int i = 0; i < distribution.length; i++) {
+				config.append(i == 0 ? "" : ",").append(distribution[i]);
+			}
+		}
+		config.append(" board ").append(evaluator.getRows()).append('x').append(evaluator.getCols());
+		// The scenario's board as well as its name, since a scenario can be redefined under the same name
+		Scenario scenario = evaluator.getScenario();
+		config.append(" scenario ").append(scenario == null ? "-"
+				: scenario.getName() + " (" + scenario.getBoardDefinition() + ")");
+		config.append(" seeds ");
+		for (int i = 0; i < seeds.length; i++) {
+			config.append(i == 0 ? "" : ",").append(seeds[i]);
+		}
+		return config.toString();
+	}
+
+	private void checkpoint() throws IOException {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		values.put("config", config());
+		values.put("runSeed", "" + runSeed);
+		values.put("iteration", "" + iteration);
+		values.put("step", "" + step);
+		values.put("best", ParameterStore.formatWeights(best));
+		values.put("bestFitness", "" + bestFitness);
+		ParameterStore.writeCheckpoint(checkpointFile, values);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int games = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+		int turnCap = args.length > 2 ? Integer.parseInt(args[2]) : GameEvaluator.NO_CAP;
+		int port = args.length > 3 ? Integer.parseInt(args[3]) : -1;
+		int jobTimeoutSeconds = args.length > 4 ? Integer.parseInt(args[4]) : -1;
+		PlayerMetrics.register();
+
+		float[] initial = ParameterStore.readWeights(PlayerSkeleton.PARAM_FILE_NAME);
+		if (initial == null) {
+			initial = PlayerSkeleton.getMultiplierWeights();
+		}
+
+		GameEvaluator evaluator = new GameEvaluator(turnCap, null);
+		// Evaluations through a coordinator hand out one seed per job
+		int jobTimeoutMillis = jobTimeoutSeconds < 0 ? TuningCoordinator.defaultJobTimeoutMillis(evaluator, 1)
+				: jobTimeoutSeconds * 1000;
+		TuningCoordinator coordinator = port < 0 ? null : new TuningCoordinator(port, evaluator, jobTimeoutMillis);
+		Tuner tuner = new Tuner(evaluator, coordinator, GameEvaluator.seeds(0, games),
+				ParameterStore.CHECKPOINT_FILE_NAME, ParameterStore.HISTORY_FILE_NAME);
+
+		FitnessCache cache = null;
+		if (coordinator == null) {
+			cache = new FitnessCache(FitnessCache.CACHE_FILE_NAME);
+			tuner.setCache(cache);
+		}
+
+		if (tuner.resumeOrStart(initial, System.nanoTime())) {
+			System.out.println("Resuming at iteration " + tuner.getIteration() + " after "
+					+ ParameterStore.countHistory(ParameterStore.HISTORY_FILE_NAME) + " evaluations");
+		}
+
+		if (Boolean.getBoolean("dashboard")) {
+			new TuningDashboard(tuner).start();
+		}
+
+		try {
+			tuner.run(iterations);
+		} finally {
+			if (coordinator != null) {
+				coordinator.close();
+			}
+			if (cache != null) {
+				cache.close();
+			}
+		}
+		System.out.println("Best: " + ParameterStore.formatWeights(tuner.getBest()) + " -> " + tuner.getBestFitness());
+	}
+}
@@ -0,0 +1,416 @@
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands evaluation jobs (a weight vector and a set of seeds) to {@link TuningWorker} processes over sockets and
+ * collects their results.
+ *
+ * Workers may connect at any time and each one is served by its own thread. A job is only handed out once a worker
+ * asks for it, and if the worker disconnects, crashes or times out before answering, the job goes back on the queue
+ * for another worker to pick up. A job that has cost {@link #MAX_ATTEMPTS} workers in a row, e.g. one naming a
+ * scenario its workers do not know, fails instead of cycling through all of them. Evaluations fail rather than wait
+ * forever once the coordinator is closed or no worker has been connected for a while.
+ *
+ * Protocol, one line per message:
+ * coordinator: {@code JOB <id> <turnCap> <distribution|-> <weights> <seeds> [<rows>x<cols> [<scenario>]]} with comma
+ *              separated lists, the board size only if it is not the standard one or a scenario follows, and the
+ *              {@link Scenario} name only if games start from one
+ * worker:      {@code RESULT <id> <GameEvaluator.Result record>}
+ */
+public class TuningCoordinator implements AutoCloseable {
+
+	// How often an idle worker thread checks whether the coordinator was closed
+	private static final int POLL_MILLIS = 500;
+
+	// Workers a job may be handed to before it fails
+	public static final int MAX_ATTEMPTS = 3;
+
+	// Default time evaluate() waits for a result while no worker is connected
+	public static final int DEFAULT_WORKER_WAIT_MILLIS = 60000;
+
+	// Time a job may take before its worker is presumed hung: a fixed allowance plus a generous time per turn, or per
+	// game if games are not capped
+	private static final int JOB_TIMEOUT_BASE_MILLIS = 10000;
+	private static final int MILLIS_PER_TURN = 1;
+	private static final int MILLIS_PER_UNCAPPED_GAME = 60 * 60 * 1000;
+
+	private final ServerSocket server;
+	private final GameEvaluator evaluator;
+	private final int jobTimeoutMillis;
+	private volatile int workerWaitMillis = DEFAULT_WORKER_WAIT_MILLIS;
+
+	private final BlockingQueue<Job> jobs = new LinkedBlockingQueue<Job>();
+	// Submitted jobs that have not completed, queued or held by a worker
+	private final Map<Integer, Job> pending = new ConcurrentHashMap<Integer, Job>();
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger nextJobId = new AtomicInteger();
+	private final AtomicInteger workers = new AtomicInteger();
+	private final AtomicInteger retries = new AtomicInteger();
+	private volatile boolean running = true;
+
+	/**
+	 * @param port - port to listen on for workers, or 0 for any free port
+	 * @param evaluator - turn cap and piece distribution that every job is evaluated with
+	 * @param jobTimeoutMillis - time a worker may take on one job before it is presumed dead, or 0 to wait forever, see
+	 *                           {@link #defaultJobTimeoutMillis(GameEvaluator, int)}
+	 */
+	public TuningCoordinator(int port, GameEvaluator evaluator, int jobTimeoutMillis) throws IOException {
+		this.server = new ServerSocket(port);
+		this.evaluator = evaluator;
+		this.jobTimeoutMillis = jobTimeoutMillis;
+
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				acceptWorkers();
+			}
+		}, "coordinator-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Job timeout for jobs of {@code seedsPerJob} games under {@code evaluator}: long enough for any capped game with
+	 * room to spare, and an hour per game for uncapped ones, which good weights can play for a very long time.
+	 */
+	public static int defaultJobTimeoutMillis(GameEvaluator evaluator, int seedsPerJob) {
+		long perGame = evaluator.getTurnCap() == GameEvaluator.NO_CAP ? MILLIS_PER_UNCAPPED_GAME
+				: (long) evaluator.getTurnCap() * MILLIS_PER_TURN;
+		return (int) Math.min(Integer.MAX_VALUE, JOB_TIMEOUT_BASE_MILLIS + perGame * seedsPerJob);
+	}
+
+	/**
+	 * Sets how long {@link #evaluate(float[], long[], int)} waits for results while no worker is connected.
+	 */
+	public void setWorkerWaitMillis(int workerWaitMillis) {
+		this.workerWaitMillis = workerWaitMillis;
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	// Number of workers currently connected
+	public int getWorkerCount() {
+		return workers.get();
+	}
+
+	// Number of times a job was put back on the queue after its worker failed
+	public int getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * Queues the evaluation of {@code weights} on {@code seeds} for the next free worker.
+	 */
+	public Future<GameEvaluator.Result> submit(float[] weights, long[] seeds) {
+		return queue(weights, seeds).result;
+	}
+
+	private Job queue(float[] weights, long[] seeds) {
+		Job job = new Job(nextJobId.getAndIncrement(), weights.clone(), seeds.clone());
+		pending.put(job.id, job);
+		jobs.add(job);
+		if (!running) {
+			// Closed while this was being queued
+			fail(job, new IOException("coordinator closed"));
+		}
+		return job;
+	}
+
+	/**
+	 * Evaluates {@code weights} on {@code seeds}, split into jobs of at most {@code seedsPerJob} seeds so that the games
+	 * are spread over all workers, and merges the results.
+	 *
+	 * @throws ExecutionException if a job failed on {@link #MAX_ATTEMPTS} workers or the coordinator was closed
+	 * @throws TimeoutException if no worker was connected for the worker wait, see
+	 *                          {@link #setWorkerWaitMillis(int)}; the remaining jobs are dropped
+	 */
+	public GameEvaluator.Result evaluate(float[] weights, long[] seeds, int seedsPerJob)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		List<Job> parts = new ArrayList<Job>();
+		for (int from = 0; from < seeds.length; from += seedsPerJob) {
+			parts.add(queue(weights, Arrays.copyOfRange(seeds, from, Math.min(seeds.length, from + seedsPerJob))));
+		}
+
+		GameEvaluator.Result result = new GameEvaluator.Result();
+		long lastWorker = System.currentTimeMillis();
+		for (Job part : parts) {
+			while (true) {
+				try {
+					result.merge(part.result.get(POLL_MILLIS, TimeUnit.MILLISECONDS));
+					break;
+				} catch (TimeoutException e) {
+					long now = System.currentTimeMillis();
+					if (workers.get() > 0) {
+						lastWorker = now;
+					} else if (now - lastWorker > workerWaitMillis) {
+						TimeoutException timeout = new TimeoutException("no worker connected for "
+								+ workerWaitMillis + " ms");
+						for (Job other : parts) {
+							fail(other, timeout);
+						}
+						throw timeout;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Stops accepting workers and disconnects the current ones. Every job that has not finished, queued or held by a
+	 * worker, fails.
+	 */
+	public void close() throws IOException {
+		running = false;
+		server.close();
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		IOException closed = new IOException("coordinator closed");
+		for (Job job : pending.values()) {
+			fail(job, closed);
+		}
+	}
+
+	private void fail(Job job, Throwable cause) {
+		jobs.remove(job);
+		pending.remove(job.id);
+		job.result.completeExceptionally(cause);
+	}
+
+	private void acceptWorkers() {
+		while (running) {
+			try {
+				final Socket socket = server.accept();
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						serve(socket);
+					}
+				}, "coordinator-worker-" + socket.getRemoteSocketAddress());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (SocketException e) {
+				// server socket was closed
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Feeds jobs to one worker until it goes away. The job it was working on, if any, is put back on the queue, or
+	 * fails if this was its last attempt or the coordinator is closed.
+	 */
+	private void serve(Socket socket) {
+		sockets.add(socket);
+		workers.incrementAndGet();
+		System.out.println("Worker joined: " + socket.getRemoteSocketAddress());
+
+		Job job = null;
+		Exception failure = null;
+		try {
+			socket.setKeepAlive(true);
+			socket.setSoTimeout(jobTimeoutMillis);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+
+			while (running) {
+				job = jobs.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (job == null || job.result.isDone()) {
+					// Nothing to do, or a job that failed while it was queued
+					job = null;
+					continue;
+				}
+
+				writer.println(encodeJob(job.id, evaluator, job.weights, job.seeds));
+				if (writer.checkError()) {
+					throw new EOFException("worker closed the connection");
+				}
+
+				String line = reader.readLine();
+				if (line == null) {
+					throw new EOFException("worker closed the connection");
+				}
+				String[] parts = line.split(" ", 3);
+				if (!parts[0].equals("RESULT") || Integer.parseInt(parts[1]) != job.id) {
+					throw new IOException("unexpected reply: " + line);
+				}
+
+				pending.remove(job.id);
+				job.result.complete(GameEvaluator.Result.fromRecord(parts[2]));
+				job = null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			failure = e;
+			System.out.println("Worker left: " + socket.getRemoteSocketAddress() + " (" + e.getMessage() + ")");
+		} finally {
+			if (job != null && !job.result.isDone()) {
+				job.attempts++;
+				if (!running) {
+					fail(job, new IOException("coordinator closed"));
+				} else if (job.attempts >= MAX_ATTEMPTS) {
+					fail(job, new IOException("job " + job.id + " failed on " + job.attempts + " workers",
+							failure));
+				} else {
+					retries.incrementAndGet();
+					jobs.add(job);
+				}
+			}
+			sockets.remove(socket);
+			workers.decrementAndGet();
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/********************************* Wire format *********************************/
+
+	static String encodeJob(int id, GameEvaluator evaluator, float[] weights, long[] seeds) {
+		StringBuilder line = new StringBuilder("JOB ").append(id).append(' ').append(evaluator.getTurnCap()).append(' ');
+
+		double[] distribution = evaluator.getPieceDistribution();
+		if (distribution == null) {
+			line.append('-');
+		} else {
+			for (int i = 0; i < distribution.length; i++) {
+				line.append(i == 0 ? "" : ",").append(distribution[i]);
+			}
+		}
+
+		line.append(' ');
+		for (int i = 0; i < weights.length; i++) {
+			line.append(i == 0 ? "" : ",").append(weights[i]);
+		}
+
+		line.append(' ');
+		for (int i = 0; i < seeds.length; i++) {
+			line.append(i == 0 ? "" : ",").append(seeds[i]);
+		}
+
+		if (!evaluator.isStandardBoard() || evaluator.getScenario() != null) {
+			line.append(' ').append(evaluator.getRows()).append('x').append(evaluator.getCols());
+		}
+		if (evaluator.getScenario() != null) {
+			line.append(' ').append(evaluator.getScenario().getName());
+		}
+		return line.toString();
+	}
+
+	static GameEvaluator decodeEvaluator(String[] job) {
+		double[] distribution = null;
+		if (!job[3].equals("-")) {
+			String[] values = job[3].split(",");
+			distribution = new double[values.length];
+			for (int i = 0; i < values.length; i++) {
+				distribution[i] = Double.parseDouble(values[i]);
+			}
+		}
+		if (job.length > 7) {
+			return new GameEvaluator(Scenario.get(job[7]), Integer.parseInt(job[2]));
+		}
+		if (job.length > 6) {
+			String[] size = job[6].split("x");
+			return new GameEvaluator(Integer.parseInt(job[2]), distribution, Integer.parseInt(size[0]),
+					Integer.parseInt(size[1]));
+		}
+		return new GameEvaluator(Integer.parseInt(job[2]), distribution);
+	}
+
+	static float[] decodeWeights(String[] job) {
+		String[] values = job[4].split(",");
+		float[] weights = new float[values.length];
+		for (int i = 0; i < values.length; i++) {
+			weights[i] = Float.parseFloat(values[i]);
+		}
+		return weights;
+	}
+
+	static long[] decodeSeeds(String[] job) {
+		String[] values = job[5].split(",");
+		long[] seeds = new long[values.length];
+		for (int i = 0; i < values.length; i++) {
+			seeds[i] = Long.parseLong(values[i]);
+		}
+		return seeds;
+	}
+
+	private static class Job {
+		final int id;
+		final float[] weights;
+		final long[] seeds;
+		final CompletableFuture<GameEvaluator.Result> result = new CompletableFuture<GameEvaluator.Result>();
+		// Workers that failed on it, only changed by the one worker thread holding the job
+		int attempts;
+
+		Job(int id, float[] weights, long[] seeds) {
+			this.id = id;
+			this.weights = weights;
+			this.seeds = seeds;
+		}
+	}
+
+	/**
+	 * Starts a coordinator with a number of worker processes on this machine and evaluates the default weights with
+	 * them. Workers on other machines can join by running {@link TuningWorker} against the printed port.
+	 *
+	 * Usage: java TuningCoordinator [local workers] [port] [games] [job timeout seconds]
+	 */
+	public static void main(String[] args) throws Exception {
+		int localWorkers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		int games = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+		GameEvaluator evaluator = new GameEvaluator();
+		int jobTimeoutMillis = args.length > 3 ? Integer.parseInt(args[3]) * 1000
+				: defaultJobTimeoutMillis(evaluator, 1);
+
+		TuningCoordinator coordinator = new TuningCoordinator(port, evaluator, jobTimeoutMillis);
+		System.out.println("Coordinator listening on port " + coordinator.getPort());
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<Process> processes = new ArrayList<Process>();
+		for (int i = 0; i < localWorkers; i++) {
+			processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "TuningWorker",
+					"localhost", "" + coordinator.getPort()).inheritIO().start());
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+			GameEvaluator.Result result = coordinator.evaluate(PlayerSkeleton.getMultiplierWeights(),
+					GameEvaluator.seeds(0, games), 1);
+			System.out.println(result);
+			System.out.println("Took " + (System.currentTimeMillis() - start) + " ms");
+		} finally {
+			coordinator.close();
+			for (Process process : processes) {
+				process.destroy();
+			}
+		}
+	}
+}
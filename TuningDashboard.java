@@ -0,0 +1,172 @@
+import java.awt.Color;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import javax.swing.JFrame;
+import javax.swing.Timer;
+
+/**
+ * Window that follows a running {@link Tuner}: best fitness and mean rows per game for every iteration, the best
+ * weights next to their names, and a histogram of rows cleared per game in the latest evaluation.
+ *
+ * The window polls {@link Tuner#getProgress()} a few times a second on the Swing event thread and only redraws when
+ * a new snapshot has been published. Snapshots are immutable, so the tuning loop never waits for the window.
+ */
+public class TuningDashboard extends JFrame {
+	private static final long serialVersionUID = 1L;
+
+	public static final int WIDTH = 900;
+	public static final int HEIGHT = 600;
+	private static final int REFRESH_MILLIS = 250;
+
+	private final Tuner tuner;
+	private final TLabel label = new TLabel(WIDTH, HEIGHT);
+	private final String[] names = PlayerSkeleton.getMultiplierNames();
+	private final Timer timer;
+	private Tuner.Progress drawn;
+
+	public TuningDashboard(Tuner tuner) {
+		this.tuner = tuner;
+		label.setXscale(0, 100);
+		label.setYscale(0, 100);
+
+		timer = new Timer(REFRESH_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				refresh();
+			}
+		});
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				timer.stop();
+			}
+		});
+
+		setResizable(false);
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);            // closing the window does not stop tuning
+		setTitle("Tuning");
+		setContentPane(label.draw);
+		pack();
+	}
+
+	public void start() {
+		setVisible(true);
+		timer.start();
+	}
+
+	private void refresh() {
+		Tuner.Progress progress = tuner.getProgress();
+		if (progress != null && progress != drawn) {
+			draw(label, progress, names);
+			label.show();
+			drawn = progress;
+		}
+	}
+
+	/**
+	 * Draws {@code progress} into {@code label}, whose coordinates must run from 0 to 100 on both axes.
+	 */
+	static void draw(TLabel label, Tuner.Progress progress, String[] names) {
+		label.clear();
+		label.setPenRadius();
+		drawFitness(label, progress);
+		drawWeights(label, progress, names);
+		drawHistogram(label, progress.histogram);
+	}
+
+	// Best fitness and mean rows per iteration, in the top half
+	private static void drawFitness(TLabel label, Tuner.Progress progress) {
+		double left = 8, right = 96, bottom = 52, top = 92;
+		int n = progress.bestFitness.length;
+		double max = 1;
+		for (int i = 0; i < n; i++) {
+			max = Math.max(max, Math.max(progress.bestFitness[i], progress.meanRows[i]));
+		}
+
+		label.textLeft(left, 97, "Iteration " + progress.iteration + "    best " + format(progress.bestFitness[n - 1])
+				+ "    step " + String.format("%.3f", progress.step), TLabel.BLACK);
+		label.textLeft(70, 97, "best fitness", TLabel.NICEGREEN);
+		label.textLeft(84, 97, "mean rows", TLabel.BLUE);
+
+		label.line(left, bottom, right, bottom);
+		label.line(left, bottom, left, top);
+		label.textLeft(1, top, format(max), TLabel.BLACK);
+		label.textLeft(1, bottom, "0", TLabel.BLACK);
+		label.text(right, bottom - 3, "" + progress.iteration);
+
+		double[][] series = { progress.bestFitness, progress.meanRows };
+		Color[] colors = { TLabel.NICEGREEN, TLabel.BLUE };
+		for (int s = 0; s < series.length; s++) {
+			label.setPenColor(colors[s]);
+			double previousX = left, previousY = bottom + (top - bottom) * series[s][0] / max;
+			for (int i = 1; i < n; i++) {
+				double x = left + (right - left) * i / (n - 1);
+				double y = bottom + (top - bottom) * series[s][i] / max;
+				label.line(previousX, previousY, x, y);
+				previousX = x;
+				previousY = y;
+			}
+			if (n == 1) {
+				label.point(previousX, previousY);
+			}
+		}
+		label.setPenColor();
+	}
+
+	// Best weights next to their names, bottom left
+	private static void drawWeights(TLabel label, Tuner.Progress progress, String[] names) {
+		label.textLeft(4, 42, "Best weights", TLabel.BLACK);
+		for (int i = 0; i < progress.best.length; i++) {
+			double y = 36 - i * 5;
+			label.textLeft(4, y, names[i], TLabel.DARK_GRAY);
+			label.textLeft(42, y, String.format("%.4f", progress.best[i]), TLabel.BLACK);
+		}
+	}
+
+	// Games per power of two of rows cleared, bottom right
+	private static void drawHistogram(TLabel label, int[] histogram) {
+		double left = 52, right = 96, bottom = 8, top = 36;
+		label.textLeft(left, 42, "Rows cleared per game, latest evaluation", TLabel.BLACK);
+		label.line(left, bottom, right, bottom);
+
+		int first = histogram.length, last = -1, most = 1;
+		for (int b = 0; b < histogram.length; b++) {
+			if (histogram[b] > 0) {
+				first = Math.min(first, b);
+				last = b;
+				most = Math.max(most, histogram[b]);
+			}
+		}
+		if (last < 0) {
+			return;
+		}
+
+		double width = (right - left) / (last - first + 1);
+		for (int b = first; b <= last; b++) {
+			double x = left + (b - first) * width;
+			double height = (top - bottom) * histogram[b] / most;
+			if (histogram[b] > 0) {
+				label.filledRectangleLL(x + width * .1, bottom, width * .8, height, TLabel.GRAY);
+				label.text(x + width / 2, bottom + height + 2, "" + histogram[b]);
+			}
+			label.text(x + width / 2, bottom - 3, b == 0 ? "0" : shortNumber(1L << (b - 1)));
+		}
+	}
+
+	private static String format(double value) {
+		return String.format("%.1f", value);
+	}
+
+	// 1500 -> 1k, 2500000 -> 2M
+	private static String shortNumber(long value) {
+		if (value >= 1000000) {
+			return value / 1000000 + "M";
+		}
+		if (value >= 1000) {
+			return value / 1000 + "k";
+		}
+		return "" + value;
+	}
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Checks that a {@link TuningCoordinator} survives the ways its workers fail, and that its evaluations never hang:
+ *   killed   - a worker process is killed mid-job, and the job is finished by the next worker
+ *   hung     - a worker takes a job and never answers, and the job times out and goes to the next worker
+ *   poisoned - a job that makes every worker drop it fails after TuningCoordinator.MAX_ATTEMPTS workers
+ *   idle     - an evaluation with no worker connected fails once the worker wait is over
+ *   closed   - closing the coordinator fails the jobs that are still queued
+ * Results that arrive are compared with the same games evaluated in this process. Exits with status 1 if any check
+ * fails.
+ *
+ * Usage: java TuningFailoverCheck
+ */
+public class TuningFailoverCheck {
+
+	// Strong enough that a job of many seeds keeps a worker busy for a while
+	private static final float[] WEIGHTS = {18.0f, -0.1f, -0.1f, -0.5f, -0.1f, -0.7f};
+	private static final int TURN_CAP = 2000;
+
+	private static final GameEvaluator EVALUATOR = new GameEvaluator(TURN_CAP, null);
+
+	private static boolean passed = true;
+
+	private static void report(String check, boolean ok, String detail) {
+		System.out.println((ok ? "PASS " : "FAIL ") + check + ": " + detail);
+		passed &= ok;
+	}
+
+	private static Process startWorker(int port) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "TuningWorker", "localhost",
+				"" + port).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+	}
+
+	private static void awaitWorkers(TuningCoordinator coordinator, int count) throws InterruptedException {
+		while (coordinator.getWorkerCount() < count) {
+			Thread.sleep(50);
+		}
+	}
+
+	/**
+	 * Connects to the coordinator like a worker, takes {@code jobs} jobs and, for each, either drops the connection
+	 * ({@code hang} false) or holds it without answering.
+	 */
+	private static Thread fakeWorker(final int port, final int jobs, final boolean hang) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (int i = 0; i < jobs; i++) {
+						Socket socket = new Socket("localhost", port);
+						try {
+							BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+									"UTF-8"));
+							if (reader.readLine() != null && hang) {
+								// Reads until the coordinator gives up on this worker and closes the connection
+								while (reader.readLine() != null) {
+								}
+							}
+						} finally {
+							socket.close();
+						}
+					}
+				} catch (IOException e) {
+					// The coordinator closed the connection
+				}
+			}
+		}, "fake-worker");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static void killed() throws Exception {
+		long[] seeds = GameEvaluator.seeds(0, 100);
+		GameEvaluator.Result expected = EVALUATOR.evaluate(WEIGHTS, seeds);
+
+		TuningCoordinator coordinator = new TuningCoordinator(0, EVALUATOR, 0);
+		Process first = startWorker(coordinator.getPort());
+		Process second = null;
+		try {
+			awaitWorkers(coordinator, 1);
+			Future<GameEvaluator.Result> result = coordinator.submit(WEIGHTS, seeds);
+			// Long enough for the worker to take the job, far too short for it to play 100 games
+			Thread.sleep(1000);
+			first.destroyForcibly().waitFor();
+
+			second = startWorker(coordinator.getPort());
+			GameEvaluator.Result actual = result.get(5, TimeUnit.MINUTES);
+			report("killed", coordinator.getRetries() == 1 && actual.toRecord().equals(expected.toRecord()),
+					coordinator.getRetries() + " retries, " + actual.getRows() + " rows, expected "
+							+ expected.getRows());
+		} finally {
+			coordinator.close();
+			first.destroyForcibly();
+			if (second != null) {
+				second.destroyForcibly();
+			}
+		}
+	}
+
+	private static void hung() throws Exception {
+		long[] seeds = GameEvaluator.seeds(0, 3);
+		GameEvaluator.Result expected = EVALUATOR.evaluate(WEIGHTS, seeds);
+
+		TuningCoordinator coordinator = new TuningCoordinator(0, EVALUATOR, 1000);
+		Process worker = null;
+		try {
+			fakeWorker(coordinator.getPort(), 1, true);
+			awaitWorkers(coordinator, 1);
+			Future<GameEvaluator.Result> result = coordinator.submit(WEIGHTS, seeds);
+
+			worker = startWorker(coordinator.getPort());
+			GameEvaluator.Result actual = result.get(5, TimeUnit.MINUTES);
+			report("hung", coordinator.getRetries() == 1 && actual.toRecord().equals(expected.toRecord()),
+					coordinator.getRetries() + " retries, " + actual.getRows() + " rows, expected "
+							+ expected.getRows());
+		} finally {
+			coordinator.close();
+			if (worker != null) {
+				worker.destroyForcibly();
+			}
+		}
+	}
+
+	private static void poisoned() throws Exception {
+		TuningCoordinator coordinator = new TuningCoordinator(0, EVALUATOR, 0);
+		try {
+			Future<GameEvaluator.Result> result = coordinator.submit(WEIGHTS, GameEvaluator.seeds(0, 1));
+			fakeWorker(coordinator.getPort(), TuningCoordinator.MAX_ATTEMPTS, false);
+			try {
+				result.get(1, TimeUnit.MINUTES);
+				report("poisoned", false, "the job completed");
+			} catch (ExecutionException e) {
+				report("poisoned", coordinator.getRetries() == TuningCoordinator.MAX_ATTEMPTS - 1,
+						coordinator.getRetries() + " retries, then " + e.getCause().getMessage());
+			}
+		} finally {
+			coordinator.close();
+		}
+	}
+
+	private static void idle() throws Exception {
+		TuningCoordinator coordinator = new TuningCoordinator(0, EVALUATOR, 0);
+		coordinator.setWorkerWaitMillis(1000);
+		long start = System.currentTimeMillis();
+		try {
+			coordinator.evaluate(WEIGHTS, GameEvaluator.seeds(0, 4), 1);
+			report("idle", false, "evaluated without workers");
+		} catch (TimeoutException e) {
+			report("idle", true, e.getMessage() + ", gave up after " + (System.currentTimeMillis() - start) + " ms");
+		} finally {
+			coordinator.close();
+		}
+	}
+
+	private static void closed() throws Exception {
+		TuningCoordinator coordinator = new TuningCoordinator(0, EVALUATOR, 0);
+		Future<GameEvaluator.Result> result = coordinator.submit(WEIGHTS, GameEvaluator.seeds(0, 1));
+		coordinator.close();
+		try {
+			result.get(10, TimeUnit.SECONDS);
+			report("closed", false, "the job completed");
+		} catch (ExecutionException e) {
+			report("closed", true, e.getCause().getMessage());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		killed();
+		hung();
+		poisoned();
+		idle();
+		closed();
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+}
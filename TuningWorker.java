@@ -0,0 +1,58 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+
+/**
+ * Connects to a {@link TuningCoordinator}, plays the games of every job it is handed and sends back the result.
+ * A worker holds no state between jobs, so it can be killed or restarted at any time.
+ *
+ * Given a cache file, games are looked up in and added to a {@link FitnessCache}, which can be shared by all workers
+ * on a machine or on a shared file system.
+ *
+ * Usage: java TuningWorker host port [cache file]
+ */
+public class TuningWorker {
+
+	public static void main(String[] args) throws IOException {
+		// The coordinator listens on any free port by default, so there is no port to fall back on
+		if (args.length < 2) {
+			System.err.println("Usage: java TuningWorker host port [cache file]");
+			System.exit(2);
+		}
+		String host = args[0];
+		int port = Integer.parseInt(args[1]);
+
+		PlayerMetrics.register();
+		FitnessCache cache = args.length > 2 ? new FitnessCache(args[2]) : null;
+
+		Socket socket = new Socket(host, port);
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] job = line.split(" ");
+				if (!job[0].equals("JOB")) {
+					System.out.println("Ignoring unknown message: " + line);
+					continue;
+				}
+
+				GameEvaluator evaluator = TuningCoordinator.decodeEvaluator(job);
+				float[] weights = TuningCoordinator.decodeWeights(job);
+				long[] seeds = TuningCoordinator.decodeSeeds(job);
+				GameEvaluator.Result result = cache == null
+						? evaluator.evaluate(weights, seeds)
+						: cache.evaluate(evaluator, weights, seeds);
+				writer.println("RESULT " + job[1] + " " + result.toRecord());
+			}
+		} finally {
+			socket.close();
+			if (cache != null) {
+				cache.close();
+			}
+		}
+	}
+}